@@ -0,0 +1,114 @@
+package com.pluralsight;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/*
+ * Sums and amount filters over long cents in the store against the double amounts the ledger
+ * used to keep on every Transaction, filtered the old way with Double bounds and a Predicate.
+ *     sum      total of every amount
+ *     filter   amounts between 50 and 100 either way, what a custom search with both ends does
+ * Run with -prof gc to see the allocation per operation next to the time.
+ * TearDown prints how far the double total drifted from the exact one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class AmountBenchmark {
+
+    @Param({"1000000", "10000000"})
+    public int rows;
+
+    private TransactionStore store;
+    private List<DoubleTransaction> doubles;
+    private TransactionQuery query;
+
+    //a row the way Transaction held it before amounts were cents
+    static final class DoubleTransaction {
+        final LocalDate date;
+        final LocalTime time;
+        final String description;
+        final String vendor;
+        final double amount;
+
+        DoubleTransaction(LocalDate date, LocalTime time, String description, String vendor, double amount) {
+            this.date = date;
+            this.time = time;
+            this.description = description;
+            this.vendor = vendor;
+            this.amount = amount;
+        }
+
+        double getAmount() {
+            return amount;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        store = TransactionLoader.load(LedgerGenerator.ledger(rows)).getStore();
+        doubles = new ArrayList<>(store.size());
+        for(int row = 0; row < store.size(); row++){
+            doubles.add(new DoubleTransaction(LocalDate.ofEpochDay(store.epochDay(row)), LocalTime.ofSecondOfDay(store.secondOfDay(row)),
+                    store.description(row), store.vendor(row), store.cents(row) / 100.0));
+        }
+        query = new TransactionQuery().amountBetween(5_000, 10_000);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        long exact = sumCents();
+        double total = sumDoubles();
+        System.out.printf("%nExact total %d cents, double total %.4f, off by %.4f cents%n", exact, total * 100, total * 100 - exact);
+    }
+
+    @Benchmark
+    public double sumDoubles() {
+        double total = 0;
+        for(DoubleTransaction transaction : doubles){
+            total += transaction.getAmount();
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long sumCents() {
+        long total = 0;
+        for(int row = 0; row < store.size(); row++){
+            total += store.cents(row);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public List<DoubleTransaction> filterDoubles() {
+        Double lowest = 50.0;
+        Double highest = 100.0;
+        Predicate<DoubleTransaction> predicate = transaction -> lowest <= Math.abs(transaction.getAmount())
+                && highest >= Math.abs(transaction.getAmount());
+        List<DoubleTransaction> matches = new ArrayList<>();
+        for(DoubleTransaction transaction : doubles){
+            if(predicate.test(transaction)) matches.add(transaction);
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public IntList filterCents() {
+        IntList matches = new IntList();
+        for(int row = 0; row < store.size(); row++){
+            if(query.amountMatches(store.cents(row))) matches.add(row);
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,51 @@
+package com.pluralsight;
+
+import java.util.function.IntPredicate;
+
+/*
+ * The custom search as it used to run before QueryEngine, kept as the benchmark baseline:
+ * date, description, vendor and amount filters applied one after another, each one
+ * either filling an empty intermediate list from a full scan or compacting it in place.
+ */
+final class ChainedCustomSearch {
+    private final TransactionStore store;
+    private final DateIndex dateIndex;
+
+    ChainedCustomSearch(TransactionStore store, DateIndex dateIndex) {
+        this.store = store;
+        this.dateIndex = dateIndex;
+    }
+
+    IntList execute(TransactionQuery query) {
+        IntList filteredList = new IntList();
+        if(query.hasDateRange()){
+            filter(row -> store.epochDay(row) >= query.getStartDay() && store.epochDay(row) <= query.getEndDay(), filteredList);
+        }
+        if(query.getDescription() != null){
+            filter(row -> query.getDescription().equalsIgnoreCase(store.description(row)), filteredList);
+        }
+        if(query.getVendor() != null){
+            filter(row -> query.getVendor().equalsIgnoreCase(store.vendor(row)), filteredList);
+        }
+        if(query.hasAmountRange()){
+            filter(row -> query.amountMatches(store.cents(row)), filteredList);
+        }
+        return filteredList;
+    }
+
+    private void filter(IntPredicate predicate, IntList filteredList) {
+        if(!filteredList.isEmpty()){
+            int kept = 0;
+            for(int i = 0; i < filteredList.size(); i++){
+                int row = filteredList.get(i);
+                if(predicate.test(row)) filteredList.set(kept++, row);
+            }
+            filteredList.truncate(kept);
+            return;
+        }
+        for(int position = 0; position < dateIndex.size(); position++){
+            int row = dateIndex.rowAt(position);
+            if(predicate.test(row)) filteredList.add(row);
+        }
+    }
+}
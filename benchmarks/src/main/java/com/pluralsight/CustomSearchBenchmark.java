@@ -0,0 +1,58 @@
+package com.pluralsight;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Custom search through QueryEngine against the old chained filters, for a few query shapes:
+ *     dateVendor     one month of one vendor
+ *     vendorAmount   one vendor, amounts between 50 and 100
+ *     description    one description
+ *     amount         amounts up to -2000 (no index applies)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CustomSearchBenchmark {
+
+    @Param({"1000000"})
+    public int rows;
+
+    @Param({"dateVendor", "vendorAmount", "description", "amount"})
+    public String shape;
+
+    @Param({"planned", "chained"})
+    public String engine;
+
+    private TransactionQuery query;
+    private QueryEngine queryEngine;
+    private ChainedCustomSearch chained;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        TransactionStore store = TransactionLoader.load(LedgerGenerator.ledger(rows)).getStore();
+        DateIndex dateIndex = new DateIndex();
+        dateIndex.rebuild(store);
+        TextIndex textIndex = new TextIndex();
+        textIndex.rebuild(store);
+        queryEngine = new QueryEngine(store, dateIndex, textIndex);
+        chained = new ChainedCustomSearch(store, dateIndex);
+        query = switch (shape) {
+            case "dateVendor" -> new TransactionQuery().between(LocalDate.of(2010, 3, 1), LocalDate.of(2010, 3, 31)).vendor("starbucks");
+            case "vendorAmount" -> new TransactionQuery().vendor("Shell").amountBetween(5_000L, 10_000L);
+            case "description" -> new TransactionQuery().description("books");
+            default -> new TransactionQuery().amountAtMost(-200_000L);
+        };
+    }
+
+    @Benchmark
+    public IntList search() {
+        return engine.equals("planned") ? queryEngine.execute(query) : chained.execute(query);
+    }
+}
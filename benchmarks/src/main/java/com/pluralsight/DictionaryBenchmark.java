@@ -0,0 +1,139 @@
+package com.pluralsight;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Interning vendors and descriptions straight from the file bytes, against decoding two Strings per row:
+ *     parseDecoded        one thread parses the file, decoding every description and vendor into a String
+ *     parseInterned       the same, looking values up by their bytes, so only new values become Strings
+ *     vendorStrings       counts the rows of one vendor with equalsIgnoreCase on row Strings
+ *     vendorFoldedIds     the same with folded dictionary ids, an int compare per row
+ *     vendorNames         decodes the vendor of every row, what showing a row costs now the dictionary keeps only bytes
+ * Run with -prof gc for the bytes allocated per parse.
+ * Setup prints the heap kept by a list of Transaction-like objects holding their own Strings, the way
+ * the ledger was kept before the column store, next to the heap kept by the dictionary-encoded store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class DictionaryBenchmark {
+
+    @Param({"1000000", "10000000"})
+    public int rows;
+
+    private FileChannel channel;
+    private MappedByteBuffer file;
+    private TransactionStore store;
+    private List<RowObject> objects;
+    private String vendor;
+    private int vendorFolded;
+
+    //a row the way an ArrayList<Transaction> kept it, with Strings of its own
+    record RowObject(LocalDate date, LocalTime time, String description, String vendor, long cents) {
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Path csv = LedgerGenerator.ledger(rows);
+        channel = FileChannel.open(csv, StandardOpenOption.READ);
+        file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+        long before = usedHeap();
+        objects = new ArrayList<>(rows);
+        byte[] scratch = new byte[256];
+        TransactionParser.parseLines(file, 0, file.limit(),
+                (epochDay, secondOfDay, line, descriptionStart, descriptionEnd, vendorStart, vendorEnd, cents) ->
+                        objects.add(new RowObject(LocalDate.ofEpochDay(epochDay), LocalTime.ofSecondOfDay(secondOfDay),
+                                TransactionParser.decodeCapitalized(line, descriptionStart, descriptionEnd, scratch),
+                                TransactionParser.decodeCapitalized(line, vendorStart, vendorEnd, scratch), cents)),
+                new ArrayList<>());
+        long objectHeap = usedHeap() - before;
+
+        before = usedHeap();
+        store = parseInterned();
+        long storeHeap = usedHeap() - before;
+        System.out.printf("%nHeap kept for %d rows: %,d bytes as objects with their own Strings, %,d bytes in the store"
+                        + " with %d vendors and %d descriptions%n",
+                store.size(), objectHeap, storeHeap, store.vendors().size(), store.descriptions().size());
+
+        vendor = store.vendor(0).toUpperCase();
+        vendorFolded = store.vendors().findFolded(vendor);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        channel.close();
+    }
+
+    private static long usedHeap() {
+        for(int i = 0; i < 3; i++){
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    @Benchmark
+    public TransactionStore parseDecoded() {
+        TransactionStore decoded = new TransactionStore();
+        byte[] scratch = new byte[256];
+        TransactionParser.parseLines(file, 0, file.limit(),
+                (epochDay, secondOfDay, line, descriptionStart, descriptionEnd, vendorStart, vendorEnd, cents) ->
+                        decoded.add(epochDay, secondOfDay, cents,
+                                TransactionParser.decodeCapitalized(line, descriptionStart, descriptionEnd, scratch),
+                                TransactionParser.decodeCapitalized(line, vendorStart, vendorEnd, scratch)),
+                new ArrayList<>());
+        return decoded;
+    }
+
+    @Benchmark
+    public TransactionStore parseInterned() {
+        TransactionStore interned = new TransactionStore();
+        TransactionParser.parseLines(file, 0, file.limit(),
+                (epochDay, secondOfDay, line, descriptionStart, descriptionEnd, vendorStart, vendorEnd, cents) ->
+                        interned.add(epochDay, secondOfDay, cents, line, descriptionStart, descriptionEnd, vendorStart, vendorEnd),
+                new ArrayList<>());
+        return interned;
+    }
+
+    @Benchmark
+    public int vendorStrings() {
+        int count = 0;
+        for(RowObject row : objects){
+            if(row.vendor().equalsIgnoreCase(vendor)) count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int vendorFoldedIds() {
+        int count = 0;
+        for(int row = 0; row < store.size(); row++){
+            if(store.foldedVendorId(row) == vendorFolded) count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public long vendorNames() {
+        long length = 0;
+        for(int row = 0; row < store.size(); row++){
+            length += store.vendor(row).length();
+        }
+        return length;
+    }
+}
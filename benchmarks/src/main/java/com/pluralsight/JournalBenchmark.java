@@ -0,0 +1,59 @@
+package com.pluralsight;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Journal appends per second for each fsync policy, from one thread and from
+ * eight threads appending at once (where group commit shares the fsyncs).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JournalBenchmark {
+
+    @Param({"ALWAYS", "INTERVAL", "NEVER"})
+    public String policy;
+
+    private Path directory;
+    private TransactionJournal journal;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal-bench");
+        Path mainFile = Files.createFile(directory.resolve("transactions.csv"));
+        journal = TransactionJournal.open(mainFile, directory.resolve("transactions.csv.journal"),
+                TransactionJournal.FsyncPolicy.valueOf(policy),
+                new TransactionStore(), new ArrayList<>());
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        journal.close();
+        try(var files = Files.list(directory)){
+            for(Path file : (Iterable<Path>) files::iterator){
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public void append() throws IOException {
+        journal.append(20_000, 43_200, -8_950, "Groceries", "Walmart");
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void appendConcurrently() throws IOException {
+        journal.append(20_000, 43_200, -8_950, "Groceries", "Walmart");
+    }
+}
@@ -0,0 +1,156 @@
+package com.pluralsight;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Recording throughput of LedgerService with 1, 4 and 16 writer threads while one thread keeps
+ * running reports, with no journal and with an fsync per group commit.
+ * After every iteration the store, indexes, rollups and journal have to agree on every row,
+ * otherwise the run fails. The stress test with readers and compaction is LedgerServiceCheck.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LedgerBenchmark {
+
+    private static final int DAY = 20_000;
+    private static final String[] VENDORS = {"Amazon", "Walmart", "Shell", "Netflix"};
+
+    @Param({"NONE", "ALWAYS"})
+    public String journalPolicy;
+
+    @Param({"1", "32"})
+    public int batchSize;
+
+    private Path directory;
+    private TransactionStore store;
+    private DateIndex dateIndex;
+    private TextIndex textIndex;
+    private Rollups rollups;
+    private TransactionJournal journal;
+    private LedgerService ledger;
+
+    //rows recorded, the batch score counts batches
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Writer {
+        public long rows;
+        private List<LedgerService.NewTransaction> batch;
+
+        @Setup(Level.Trial)
+        public void setUp(LedgerBenchmark benchmark) {
+            batch = new ArrayList<>(benchmark.batchSize);
+            for(int i = 0; i < benchmark.batchSize; i++){
+                batch.add(new LedgerService.NewTransaction(DAY, i % 86_400, -(100 + i), "Groceries", VENDORS[i % VENDORS.length]));
+            }
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        store = new TransactionStore();
+        dateIndex = new DateIndex();
+        textIndex = new TextIndex();
+        rollups = new Rollups();
+        ledger = new LedgerService(store, dateIndex, textIndex, rollups);
+        if(!journalPolicy.equals("NONE")){
+            directory = Files.createTempDirectory("ledger-bench");
+            Path mainFile = Files.createFile(directory.resolve("transactions.csv"));
+            journal = TransactionJournal.open(mainFile, directory.resolve("transactions.csv.journal"),
+                    TransactionJournal.FsyncPolicy.valueOf(journalPolicy), new TransactionStore(), new ArrayList<>());
+            ledger.setJournal(journal);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        int rows = store.size();
+        if(dateIndex.size() != rows || rollups.total().count() != rows) {
+            throw new IllegalStateException("Index or rollups lost rows: " + rows + " rows, " + dateIndex.size()
+                    + " indexed, " + rollups.total().count() + " counted");
+        }
+        boolean[] seen = new boolean[rows];
+        for(int position = 0; position < rows; position++){
+            int row = dateIndex.rowAt(position);
+            if(seen[row]) throw new IllegalStateException("Row " + row + " is indexed twice");
+            seen[row] = true;
+        }
+        long vendorRows = 0;
+        for(String vendor : VENDORS){
+            vendorRows += textIndex.vendorRows(vendor).size();
+        }
+        if(vendorRows != rows) throw new IllegalStateException("Vendor index has " + vendorRows + " of " + rows + " rows");
+        if(journal != null){
+            if(journal.records() != rows) throw new IllegalStateException("Journal has " + journal.records() + " of " + rows + " rows");
+            journal.close();
+            try(var files = Files.list(directory)){
+                for(Path file : (Iterable<Path>) files::iterator){
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+            journal = null;
+        }
+    }
+
+    private int record(Writer writer) throws IOException {
+        writer.rows += writer.batch.size();
+        return writer.batch.size() == 1 ? ledger.record(writer.batch.get(0)) : ledger.recordAll(writer.batch);
+    }
+
+    private long report() {
+        return ledger.read(() -> rollups.vendor("Amazon").count() + textIndex.vendorRows("Shell").size() + dateIndex.size());
+    }
+
+    @Benchmark
+    @Group("writers1")
+    @GroupThreads(1)
+    public int record1(Writer writer) throws IOException {
+        return record(writer);
+    }
+
+    @Benchmark
+    @Group("writers1")
+    @GroupThreads(1)
+    public long report1() {
+        return report();
+    }
+
+    @Benchmark
+    @Group("writers4")
+    @GroupThreads(4)
+    public int record4(Writer writer) throws IOException {
+        return record(writer);
+    }
+
+    @Benchmark
+    @Group("writers4")
+    @GroupThreads(1)
+    public long report4() {
+        return report();
+    }
+
+    @Benchmark
+    @Group("writers16")
+    @GroupThreads(16)
+    public int record16(Writer writer) throws IOException {
+        return record(writer);
+    }
+
+    @Benchmark
+    @Group("writers16")
+    @GroupThreads(1)
+    public long report16() {
+        return report();
+    }
+}
@@ -0,0 +1,126 @@
+package com.pluralsight;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+ * Deterministic generator for pipe-delimited ledgers used by the benchmarks.
+ * The same row count always produces the same file, so results can be compared between builds.
+ * ------------------------------------------------
+ * Vendors are either
+ *     UNIFORM   16 well known vendors, each about as common as the others
+ *     ZIPF      5,000 vendors whose frequency falls with their rank, as in a real statement:
+ *               the top vendor has about 11% of the rows and three quarters of the vendors appear
+ *               in fewer than 0.01% of them
+ * Any row count from 10K to 50M works, a 50M row file is about 2.6 GB.
+ */
+final class LedgerGenerator {
+
+    enum Vendors {
+        UNIFORM, ZIPF
+    }
+
+    private static final String[] VENDORS = {
+            "Amazon", "Walmart", "Target", "Costco", "Shell", "Starbucks", "Netflix", "Spotify",
+            "Uber", "Lyft", "Apple", "Best buy", "Home depot", "Kroger", "Chipotle", "Employer inc"
+    };
+    private static final String[] DESCRIPTIONS = {
+            "Groceries", "Gas", "Coffee", "Subscription", "Ride", "Electronics", "Dinner",
+            "Household supplies", "Paycheck", "Refund", "Gift", "Books"
+    };
+    private static final LocalDate FIRST_DAY = LocalDate.of(2000, 1, 1);
+    private static final int DAYS = 365 * 25;
+    //the last day a generated row can have
+    static final LocalDate LAST_DAY = FIRST_DAY.plusDays(DAYS - 1);
+
+    private static final int ZIPF_VENDORS = 5_000;
+    private static final double ZIPF_EXPONENT = 1.0;
+    //share of the rows going to the vendors up to each rank, the well known vendors come first
+    private static final double[] ZIPF_CUMULATIVE = zipfCumulative();
+
+    private LedgerGenerator() {
+    }
+
+    /**
+     * Returns a ledger file with the given number of rows, generating it the first time it is asked for.
+     */
+    static Path ledger(int rows) throws IOException {
+        return ledger(rows, Vendors.UNIFORM);
+    }
+
+    /**
+     * Returns a ledger file with the given number of rows and vendor distribution,
+     * generating it the first time it is asked for.
+     */
+    static Path ledger(int rows, Vendors vendors) throws IOException {
+        Path dir = Path.of(System.getProperty("java.io.tmpdir"), "financial-tracker-bench");
+        Files.createDirectories(dir);
+        String name = vendors == Vendors.UNIFORM ? "ledger-" + rows : "ledger-" + rows + "-" + vendors.name().toLowerCase();
+        Path file = dir.resolve(name + ".csv");
+        if(!Files.exists(file)){
+            Path tmp = dir.resolve(name + ".csv.tmp");
+            write(tmp, rows, vendors);
+            Files.move(tmp, file);
+        }
+        return file;
+    }
+
+    static void write(Path file, int rows) throws IOException {
+        write(file, rows, Vendors.UNIFORM);
+    }
+
+    static void write(Path file, int rows, Vendors vendors) throws IOException {
+        Random random = new Random(rows);
+        try(BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)){
+            StringBuilder line = new StringBuilder(96);
+            for(int i = 0; i < rows; i++){
+                line.setLength(0);
+                LocalDate date = FIRST_DAY.plusDays(random.nextInt(DAYS));
+                int second = random.nextInt(86_400);
+                line.append(date).append('|');
+                appendTwoDigits(line, second / 3600).append(':');
+                appendTwoDigits(line, second / 60 % 60).append(':');
+                appendTwoDigits(line, second % 60).append('|');
+                line.append(DESCRIPTIONS[random.nextInt(DESCRIPTIONS.length)]).append('|');
+                if(vendors == Vendors.UNIFORM) line.append(VENDORS[random.nextInt(VENDORS.length)]).append('|');
+                else appendZipfVendor(line, random).append('|');
+                long cents = 1 + random.nextInt(250_000);
+                if(random.nextInt(5) != 0) cents = -cents;
+                if(cents < 0) line.append('-');
+                line.append(Math.abs(cents) / 100).append('.');
+                appendTwoDigits(line, (int) (Math.abs(cents) % 100)).append('\n');
+                writer.append(line);
+            }
+        }
+    }
+
+    private static StringBuilder appendZipfVendor(StringBuilder line, Random random) {
+        int rank = Arrays.binarySearch(ZIPF_CUMULATIVE, random.nextDouble());
+        if(rank < 0) rank = Math.min(-rank - 1, ZIPF_VENDORS - 1);
+        return rank < VENDORS.length ? line.append(VENDORS[rank]) : line.append("Merchant ").append(rank + 1);
+    }
+
+    private static double[] zipfCumulative() {
+        double[] cumulative = new double[ZIPF_VENDORS];
+        double sum = 0;
+        for(int rank = 0; rank < ZIPF_VENDORS; rank++){
+            sum += 1 / Math.pow(rank + 1, ZIPF_EXPONENT);
+            cumulative[rank] = sum;
+        }
+        for(int rank = 0; rank < ZIPF_VENDORS; rank++){
+            cumulative[rank] /= sum;
+        }
+        return cumulative;
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder line, int value) {
+        if(value < 10) line.append('0');
+        return line.append(value);
+    }
+}
@@ -0,0 +1,45 @@
+package com.pluralsight;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Startup load throughput: parse the whole ledger and sort it once.
+ * The rows counter turns the score into rows per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class LoaderBenchmark {
+
+    @Param({"1000000", "10000000"})
+    public int rows;
+
+    private Path file;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Rows {
+        public long rows;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = LedgerGenerator.ledger(rows);
+    }
+
+    @Benchmark
+    public DateIndex load(Rows counter) throws IOException {
+        TransactionStore loaded = TransactionLoader.load(file).getStore();
+        DateIndex index = new DateIndex();
+        index.rebuild(loaded);
+        counter.rows += loaded.size();
+        return index;
+    }
+}
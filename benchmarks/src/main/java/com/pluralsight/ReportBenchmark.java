@@ -0,0 +1,124 @@
+package com.pluralsight;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Every report of the reports menu, plus deposits and payments from the ledger menu, the way
+ * FinancialTracker runs it: rows collected under the read lock, then written as text to a
+ * stream that drops them, so formatting is part of the score.
+ * "Today" is the last day of the generated ledger, so the month and year reports are not empty.
+ * Vendor reports ask for the vendor with the most rows under ZIPF, in lower case.
+ * The report cache is left out, each run computes its report again.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+public class ReportBenchmark {
+
+    private static final String VENDOR = "amazon";
+
+    @Param({"10000", "1000000"})
+    public int rows;
+
+    @Param({"UNIFORM", "ZIPF"})
+    public String vendors;
+
+    @Param({"monthToDate", "previousMonth", "yearToDate", "previousYear", "vendor", "customSearch", "keywords",
+            "topVendors", "largestPayments", "vendorMonths", "paymentSizes", "deposits", "payments"})
+    public String report;
+
+    private TransactionStore store;
+    private DateIndex dateIndex;
+    private TextIndex textIndex;
+    private Rollups rollups;
+    private QueryEngine queryEngine;
+    private ColumnScan columnScan;
+    private LedgerAnalytics analytics;
+    private LedgerService ledger;
+    private TransactionQuery customQuery;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        store = TransactionLoader.load(LedgerGenerator.ledger(rows, LedgerGenerator.Vendors.valueOf(vendors))).getStore();
+        dateIndex = new DateIndex();
+        dateIndex.rebuild(store);
+        textIndex = new TextIndex();
+        textIndex.rebuild(store);
+        rollups = new Rollups();
+        rollups.rebuild(store, store.size());
+        columnScan = new ColumnScan(store, dateIndex);
+        queryEngine = new QueryEngine(store, dateIndex, textIndex, columnScan);
+        analytics = new LedgerAnalytics(store, dateIndex);
+        ledger = new LedgerService(store, dateIndex, textIndex, rollups);
+        LocalDate lastYear = LedgerGenerator.LAST_DAY.minusYears(1);
+        customQuery = new TransactionQuery().between(lastYear.withDayOfYear(1), lastYear.withDayOfYear(lastYear.lengthOfYear()))
+                .vendor(VENDOR).amountAtMost(-5_000L);
+    }
+
+    @Benchmark
+    public Object run() {
+        LocalDate today = LedgerGenerator.LAST_DAY;
+        int year = today.getYear();
+        return switch (report) {
+            case "monthToDate" -> dateRange(today.withDayOfMonth(1), today);
+            case "previousMonth" -> {
+                LocalDate month = today.minusMonths(1);
+                yield dateRange(month.withDayOfMonth(1), month.withDayOfMonth(month.lengthOfMonth()));
+            }
+            case "yearToDate" -> dateRange(today.withDayOfYear(1), today);
+            case "previousYear" -> {
+                LocalDate previous = today.minusYears(1);
+                yield dateRange(previous.withDayOfYear(1), previous.withDayOfYear(previous.lengthOfYear()));
+            }
+            case "vendor" -> {
+                IntList found = ledger.read(() -> DateIndex.orderByDate(store, textIndex.vendorRows(VENDOR)));
+                write(found);
+                yield ledger.read(() -> rollups.vendor(VENDOR));
+            }
+            case "customSearch" -> write(ledger.read(() -> queryEngine.execute(customQuery)));
+            case "keywords" -> write(ledger.read(() -> DateIndex.orderByDate(store, textIndex.keywordRows("house sup"))));
+            case "topVendors" -> ledger.read(() -> analytics.topVendors(10, Integer.MIN_VALUE, Integer.MAX_VALUE));
+            case "largestPayments" -> write(ledger.read(() -> analytics.largestPayments(10, Integer.MIN_VALUE, Integer.MAX_VALUE)));
+            case "vendorMonths" -> ledger.read(() -> analytics.vendorMonths(year, 10));
+            case "paymentSizes" -> ledger.read(() -> analytics.paymentSizes(Integer.MIN_VALUE, Integer.MAX_VALUE));
+            case "deposits" -> write(ledger.read(() -> columnScan.scan(new TransactionQuery().amountAtLeast(1))));
+            case "payments" -> write(ledger.read(() -> columnScan.scan(new TransactionQuery().amountAtMost(-1))));
+            default -> throw new IllegalArgumentException("Unknown report " + report);
+        };
+    }
+
+    //filterByDateRange: the rows of the period from the date index, then the totals from the rollups
+    private Rollups.Totals dateRange(LocalDate start, LocalDate end) {
+        IntList found = ledger.read(() -> {
+            IntList collected = new IntList();
+            int to = dateIndex.upperBound((int) end.toEpochDay());
+            for(int position = dateIndex.lowerBound((int) start.toEpochDay()); position < to; position++){
+                collected.add(dateIndex.rowAt(position));
+            }
+            return collected;
+        });
+        write(found);
+        return ledger.read(() -> rollups.between(start, end));
+    }
+
+    //displayRows without paging
+    private int write(IntList found) {
+        ReportWriter writer = new ReportWriter(OutputStream.nullOutputStream(), ReportWriter.Format.TEXT, store);
+        ledger.read(() -> {
+            for(int i = 0; i < found.size(); i++){
+                writer.write(found.get(i));
+            }
+            writer.finish();
+            return writer;
+        });
+        return writer.rows();
+    }
+}
@@ -0,0 +1,95 @@
+package com.pluralsight;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+
+/*
+ * Full-ledger filters through ColumnScan, row by row and with the Vector API, on 1 to 8 fork-join
+ * threads, against the single-threaded predicate loop the ledger menu used before:
+ *     deposits      amounts above zero
+ *     payments      amounts below zero
+ *     amountRange   amounts between 50 and 100 either way
+ * The loop ignores threads. Setup fails if the three ways disagree on a single row.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g", "--add-modules=jdk.incubator.vector"})
+public class ScanBenchmark {
+
+    @Param({"10000000"})
+    public int rows;
+
+    @Param({"deposits", "payments", "amountRange"})
+    public String filter;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private TransactionStore store;
+    private DateIndex dateIndex;
+    private TransactionQuery query;
+    private IntPredicate predicate;
+    private ForkJoinPool pool;
+    private ColumnScan scalar;
+    private ColumnScan vector;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        store = TransactionLoader.load(LedgerGenerator.ledger(rows)).getStore();
+        dateIndex = new DateIndex();
+        dateIndex.rebuild(store);
+        query = switch (filter) {
+            case "deposits" -> new TransactionQuery().amountAtLeast(1);
+            case "payments" -> new TransactionQuery().amountAtMost(-1);
+            default -> new TransactionQuery().amountBetween(5_000, 10_000);
+        };
+        predicate = switch (filter) {
+            case "deposits" -> row -> store.cents(row) > 0;
+            case "payments" -> row -> store.cents(row) < 0;
+            default -> row -> Math.abs(store.cents(row)) >= 5_000 && Math.abs(store.cents(row)) <= 10_000;
+        };
+        pool = new ForkJoinPool(threads);
+        scalar = new ColumnScan(store, dateIndex, pool, false);
+        vector = new ColumnScan(store, dateIndex, pool, true);
+
+        IntList expected = loop();
+        for(IntList actual : new IntList[]{scalar(), vector()}){
+            if(actual.size() != expected.size()) throw new IllegalStateException(actual.size() + " rows instead of " + expected.size());
+            for(int i = 0; i < expected.size(); i++){
+                if(actual.get(i) != expected.get(i)) throw new IllegalStateException("Row " + i + " differs");
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public IntList loop() {
+        IntList matches = new IntList();
+        for(int position = 0; position < dateIndex.size(); position++){
+            int row = dateIndex.rowAt(position);
+            if(predicate.test(row)) matches.add(row);
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public IntList scalar() {
+        return scalar.scan(query);
+    }
+
+    @Benchmark
+    public IntList vector() {
+        return vector.scan(query);
+    }
+}
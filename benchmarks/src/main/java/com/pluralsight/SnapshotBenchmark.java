@@ -0,0 +1,55 @@
+package com.pluralsight;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Startup time: everything loadTransactions does before the menu shows, from the CSV
+ * and from the binary snapshot of the same ledger. Both end with the date index built.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class SnapshotBenchmark {
+
+    @Param({"1000000", "10000000"})
+    public int rows;
+
+    private Path csv;
+    private Path snapshot;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        csv = LedgerGenerator.ledger(rows);
+        snapshot = csv.resolveSibling(csv.getFileName() + ".snapshot");
+        if(!Files.exists(snapshot)){
+            TransactionStore store = TransactionLoader.load(csv).getStore();
+            TransactionSnapshot.write(snapshot, store, store.size(), csv);
+        }
+    }
+
+    @Benchmark
+    public DateIndex csvLoad() throws IOException {
+        TransactionStore store = new TransactionStore();
+        store.addAll(TransactionLoader.load(csv).getStore());
+        DateIndex index = new DateIndex();
+        index.rebuild(store);
+        return index;
+    }
+
+    @Benchmark
+    public DateIndex snapshotLoad() throws IOException {
+        TransactionStore store = new TransactionStore();
+        if(!TransactionSnapshot.read(snapshot, csv, store)) throw new IllegalStateException("Snapshot is out of date");
+        DateIndex index = new DateIndex();
+        index.rebuild(store);
+        return index;
+    }
+}
@@ -0,0 +1,116 @@
+package com.pluralsight;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The steps of a session that do not depend on the user:
+ *     loadCsv              loadTransactions without a snapshot: parse, save a snapshot, sort, text index,
+ *                          and rollups rebuilt and saved
+ *     loadSnapshot         loadTransactions from the snapshot, with the rollups saved for the file
+ *     sortTransactions     the date index rebuilt over a loaded store
+ *     exitSave             the compaction on exit: main file, snapshot and rollups rewritten
+ * Each does what FinancialTracker does in the same order, without the console.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+public class StartupBenchmark {
+
+    @Param({"10000", "1000000"})
+    public int rows;
+
+    @Param({"UNIFORM", "ZIPF"})
+    public String vendors;
+
+    private Path csv;
+    private Path snapshot;
+    private Path rollupsFile;
+    private TransactionStore store;
+    private DateIndex dateIndex;
+    private Rollups rollups;
+
+    private Path directory;
+    private TransactionJournal journal;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        csv = LedgerGenerator.ledger(rows, LedgerGenerator.Vendors.valueOf(vendors));
+        snapshot = csv.resolveSibling(csv.getFileName() + ".snapshot");
+        rollupsFile = csv.resolveSibling(csv.getFileName() + ".rollups");
+        store = TransactionLoader.load(csv).getStore();
+        dateIndex = new DateIndex();
+        dateIndex.rebuild(store);
+        rollups = new Rollups();
+        rollups.rebuild(store, store.size());
+        if(!Files.exists(snapshot)) TransactionSnapshot.write(snapshot, store, store.size(), csv);
+        rollups.save(rollupsFile, csv);
+
+        directory = Files.createTempDirectory("startup-bench");
+        Path mainFile = Files.createFile(directory.resolve("transactions.csv"));
+        journal = TransactionJournal.open(mainFile, directory.resolve("transactions.csv.journal"),
+                TransactionJournal.FsyncPolicy.ALWAYS, new TransactionStore(), new ArrayList<>());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        journal.close();
+        try(var files = Files.list(directory)){
+            for(Path file : (Iterable<Path>) files::iterator){
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public Rollups loadCsv() throws IOException {
+        TransactionStore loaded = new TransactionStore();
+        loaded.addAll(TransactionLoader.load(csv).getStore());
+        TransactionSnapshot.write(directory.resolve("loaded.snapshot"), loaded, loaded.size(), csv);
+        Rollups loadedRollups = openLedger(loaded, false);
+        loadedRollups.save(directory.resolve("loaded.rollups"), csv);
+        return loadedRollups;
+    }
+
+    @Benchmark
+    public Rollups loadSnapshot() throws IOException {
+        TransactionStore loaded = new TransactionStore();
+        if(!TransactionSnapshot.read(snapshot, csv, loaded)) throw new IllegalStateException("Snapshot is out of date");
+        return openLedger(loaded, true);
+    }
+
+    @Benchmark
+    public DateIndex sortTransactions() {
+        DateIndex index = new DateIndex();
+        index.rebuild(store);
+        return index;
+    }
+
+    @Benchmark
+    public void exitSave() throws IOException {
+        Path mainFile = directory.resolve("transactions.csv");
+        journal.compact(store, dateIndex);
+        TransactionSnapshot.write(directory.resolve("transactions.csv.snapshot"), store, store.size(), mainFile);
+        rollups.save(directory.resolve("transactions.csv.rollups"), mainFile);
+    }
+
+    //the indexes and rollups openLedger builds once the rows are in the store
+    private Rollups openLedger(TransactionStore loaded, boolean savedRollups) throws IOException {
+        DateIndex index = new DateIndex();
+        index.rebuild(loaded);
+        TextIndex textIndex = new TextIndex();
+        textIndex.rebuild(loaded);
+        Rollups loadedRollups = new Rollups();
+        if(!savedRollups || !loadedRollups.load(rollupsFile, csv)) loadedRollups.rebuild(loaded, loaded.size());
+        return loadedRollups;
+    }
+}
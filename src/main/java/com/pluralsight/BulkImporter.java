@@ -0,0 +1,429 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+
+/*
+ * Non-interactive import of statement files in the transactions file format.
+ * ------------------------------------------------
+ * The files go through a pipeline of bounded queues, so a slow stage holds the others back
+ * instead of piling data up in memory:
+ *     read      one thread cuts the files into chunks that end on a line break
+ *     parse     one thread per core parses and validates chunks with TransactionParser
+ *     insert    the calling thread puts chunks back in file order, drops rows that were already
+ *               in the ledger or in an earlier file of the import by (date, time, vendor ignoring case,
+ *               amount) and records the rest in batches
+ * Equal lines within one file are all recorded, a statement can list the same purchase twice.
+ * Lines that are rejected are counted per file argument with their line numbers.
+ * If a stage fails the reader stops at its next chunk, and the chunks already read are drained.
+ */
+final class BulkImporter {
+
+    static final int CHUNK_SIZE = 4 * 1024 * 1024;
+    //each batch is merged into the date index in one pass, so larger batches mean fewer passes
+    static final int BATCH_SIZE = 64 * 1024;
+
+    private final LedgerService ledger;
+    private final TransactionStore store;
+    private final int parsers;
+
+    BulkImporter(LedgerService ledger, TransactionStore store, int parsers) {
+        this.ledger = ledger;
+        this.store = store;
+        this.parsers = parsers;
+    }
+
+    /**
+     * What an import did. Rejected lines are kept per file argument, in argument order, so a file
+     * given twice is reported twice.
+     */
+    static final class Result {
+        long lines;
+        long imported;
+        long duplicates;
+        final List<List<TransactionParser.MalformedLine>> rejected = new ArrayList<>();
+        IOException failure;
+
+        long rejectedCount() {
+            long count = 0;
+            for(List<TransactionParser.MalformedLine> lines : rejected){
+                count += lines.size();
+            }
+            return count;
+        }
+    }
+
+    //a piece of one file, sequence numbers count chunks over all files
+    private record Chunk(long sequence, int file, long firstLine, ByteBuffer bytes) {
+    }
+
+    private record ParsedChunk(long sequence, int file, long lines, List<LedgerService.NewTransaction> rows,
+                               List<TransactionParser.MalformedLine> rejected) {
+    }
+
+    private static final Chunk END_OF_FILES = new Chunk(-1, -1, 0, null);
+    private static final ParsedChunk END_OF_CHUNKS = new ParsedChunk(-1, -1, 0, null, null);
+
+    /**
+     * Imports the files in the order given. Rows recorded before a failure stay in the ledger.
+     */
+    Result importFiles(List<Path> files) {
+        Result result = new Result();
+        for(int file = 0; file < files.size(); file++){
+            result.rejected.add(new ArrayList<>());
+        }
+        BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(parsers * 2);
+        BlockingQueue<ParsedChunk> parsed = new ArrayBlockingQueue<>(parsers * 2);
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService pipeline = Executors.newFixedThreadPool(parsers + 1, runnable -> {
+            Thread thread = new Thread(runnable, "import-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        IOException[] readFailure = new IOException[1];
+        AtomicReference<Throwable> parseFailure = new AtomicReference<>();
+        //set once any stage has failed, the reader stops at its next chunk
+        AtomicBoolean stopped = new AtomicBoolean();
+        pipeline.execute(() -> {
+            try{
+                read(files, chunks, stopped);
+            }
+            catch(IOException e){
+                readFailure[0] = e;
+            }
+            finally{
+                for(int i = 0; i < parsers; i++){
+                    putUninterruptibly(chunks, END_OF_FILES);
+                }
+            }
+        });
+        for(int i = 0; i < parsers; i++){
+            pipeline.execute(() -> parse(chunks, parsed, parseFailure, stopped));
+        }
+        insert(files, parsed, result, stopped);
+        pipeline.shutdown();
+        if(parseFailure.get() != null) result.failure = new IOException("A chunk could not be parsed", parseFailure.get());
+        if(result.failure == null) result.failure = readFailure[0];
+        return result;
+    }
+
+    /**
+     * Read stage: cuts every file into chunks of about CHUNK_SIZE that end on a line break.
+     * A line longer than a chunk makes the buffer grow until the line fits.
+     */
+    private static void read(List<Path> files, BlockingQueue<Chunk> chunks, AtomicBoolean stopped) throws IOException {
+        long sequence = 0;
+        for(int file = 0; file < files.size(); file++){
+            try(FileChannel channel = FileChannel.open(files.get(file), StandardOpenOption.READ)){
+                ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+                long nextLine = 1;
+                boolean endOfFile = false;
+                while(!endOfFile){
+                    endOfFile = channel.read(buffer) < 0;
+                    if(!endOfFile && buffer.hasRemaining()) continue;
+                    int end = buffer.position();
+                    if(!endOfFile){
+                        while(end > 0 && buffer.get(end - 1) != '\n'){
+                            end--;
+                        }
+                        if(end == 0){
+                            buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.flip());
+                            continue;
+                        }
+                    }
+                    if(stopped.get()) return;
+                    if(end > 0){
+                        byte[] bytes = Arrays.copyOf(buffer.array(), end);
+                        putUninterruptibly(chunks, new Chunk(sequence++, file, nextLine, ByteBuffer.wrap(bytes)));
+                        for(byte b : bytes){
+                            if(b == '\n') nextLine++;
+                        }
+                    }
+                    //the cut-off line moves to the front of the buffer
+                    buffer.limit(buffer.position()).position(end);
+                    buffer.compact();
+                }
+            }
+        }
+    }
+
+    /**
+     * Parse stage: parses and validates chunks until the end of the files.
+     * Besides what the parser checks, a transaction needs a description, a vendor and an amount other than 0.
+     * A chunk that fails stops the import, and this thread then drops chunks until the end of the files
+     * so the reader is never left waiting on a full queue.
+     */
+    private static void parse(BlockingQueue<Chunk> chunks, BlockingQueue<ParsedChunk> parsed,
+                              AtomicReference<Throwable> failure, AtomicBoolean stopped) {
+        //one String per distinct value on this thread, shared by every row that has it, indexed by dictionary id
+        StringDictionary strings = new StringDictionary();
+        List<String> decoded = new ArrayList<>();
+        Chunk chunk = takeUninterruptibly(chunks);
+        try{
+            for(; chunk != END_OF_FILES; chunk = takeUninterruptibly(chunks)){
+                putUninterruptibly(parsed, parseChunk(chunk, strings, decoded));
+            }
+        }
+        catch(RuntimeException | Error e){
+            failure.compareAndSet(null, e);
+            stopped.set(true);
+            while(chunk != END_OF_FILES){
+                chunk = takeUninterruptibly(chunks);
+            }
+        }
+        finally{
+            putUninterruptibly(parsed, END_OF_CHUNKS);
+        }
+    }
+
+    private static ParsedChunk parseChunk(Chunk chunk, StringDictionary strings, List<String> decoded) {
+        List<LedgerService.NewTransaction> rows = new ArrayList<>();
+        List<TransactionParser.MalformedLine> rejected = new ArrayList<>();
+        long[] lineNumber = {chunk.firstLine()};
+        TransactionParser.RecordSink sink = (epochDay, secondOfDay, line, descriptionStart, descriptionEnd, vendorStart, vendorEnd, cents) -> {
+            String description = decoded(strings, decoded, strings.intern(line, descriptionStart, descriptionEnd));
+            String vendor = decoded(strings, decoded, strings.intern(line, vendorStart, vendorEnd));
+            String reason = null;
+            if(description.isBlank()) reason = "missing description";
+            else if(vendor.isBlank()) reason = "missing vendor";
+            else if(cents == 0) reason = "amount is zero";
+            if(reason == null) rows.add(new LedgerService.NewTransaction(epochDay, secondOfDay, cents, description, vendor));
+            else rejected.add(new TransactionParser.MalformedLine(lineNumber[0], reason));
+        };
+        ByteBuffer bytes = chunk.bytes();
+        int lineStart = 0;
+        while(lineStart < bytes.limit()){
+            int lineEnd = lineStart;
+            while(lineEnd < bytes.limit() && bytes.get(lineEnd) != '\n'){
+                lineEnd++;
+            }
+            int contentEnd = lineEnd;
+            if(contentEnd > lineStart && bytes.get(contentEnd - 1) == '\r') contentEnd--;
+            if(contentEnd > lineStart){
+                String error = TransactionParser.parseLine(bytes, lineStart, contentEnd, sink);
+                if(error != null) rejected.add(new TransactionParser.MalformedLine(lineNumber[0], error));
+            }
+            lineNumber[0]++;
+            lineStart = lineEnd + 1;
+        }
+        return new ParsedChunk(chunk.sequence(), chunk.file(), lineNumber[0] - chunk.firstLine(), rows, rejected);
+    }
+
+    //ids are handed out in order, so a new id is always the next one to decode
+    private static String decoded(StringDictionary strings, List<String> decoded, int id) {
+        if(id == decoded.size()) decoded.add(strings.get(id));
+        return decoded.get(id);
+    }
+
+    /**
+     * Insert stage: takes parsed chunks in file order, drops duplicates and records the rest in batches.
+     * If a batch cannot be recorded it stops the reader and drains the parsers that are still running.
+     */
+    private void insert(List<Path> files, BlockingQueue<ParsedChunk> parsed, Result result, AtomicBoolean stopped) {
+        RowKeys keys = ledger.read(() -> RowKeys.of(store));
+        HashMap<Long, ParsedChunk> waiting = new HashMap<>();
+        long nextSequence = 0;
+        List<LedgerService.NewTransaction> batch = new ArrayList<>(BATCH_SIZE);
+        //first row and count of every batch recorded from the file being inserted
+        IntList recorded = new IntList();
+        int file = 0;
+        int finished = 0;
+        try{
+            while(finished < parsers){
+                ParsedChunk chunk = takeUninterruptibly(parsed);
+                if(chunk == END_OF_CHUNKS){
+                    finished++;
+                    continue;
+                }
+                waiting.put(chunk.sequence(), chunk);
+                for(ParsedChunk next = waiting.remove(nextSequence); next != null; next = waiting.remove(++nextSequence)){
+                    if(next.file() != file){
+                        //the rows of the files before this one now count as already in the ledger
+                        flush(batch, result, recorded);
+                        Lock readLock = ledger.readLock();
+                        readLock.lock();
+                        try{
+                            keys.addRecorded(recorded);
+                        }
+                        finally{
+                            readLock.unlock();
+                        }
+                        recorded.clear();
+                        file = next.file();
+                    }
+                    result.lines += next.lines();
+                    result.rejected.get(next.file()).addAll(next.rejected());
+                    for(LedgerService.NewTransaction transaction : next.rows()){
+                        if(keys.contains(transaction)){
+                            result.duplicates++;
+                            continue;
+                        }
+                        batch.add(transaction);
+                        if(batch.size() == BATCH_SIZE) flush(batch, result, recorded);
+                    }
+                }
+            }
+            flush(batch, result, recorded);
+        }
+        catch(IOException e){
+            result.failure = e;
+            stopped.set(true);
+            //the end markers already taken are counted in finished, only the running parsers send one more
+            while(finished < parsers){
+                if(takeUninterruptibly(parsed) == END_OF_CHUNKS) finished++;
+            }
+            return;
+        }
+        //a parser only stops early if it failed, the chunks after the missing one were never recorded
+        if(!waiting.isEmpty()) result.failure = new IOException("Import stopped early, a chunk could not be parsed");
+    }
+
+    private void flush(List<LedgerService.NewTransaction> batch, Result result, IntList recorded) throws IOException {
+        if(batch.isEmpty()) return;
+        recorded.add(ledger.recordAll(batch));
+        recorded.add(batch.size());
+        result.imported += batch.size();
+        batch.clear();
+    }
+
+    private static <T> T takeUninterruptibly(BlockingQueue<T> queue) {
+        while(true){
+            try{
+                return queue.take();
+            }
+            catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static <T> void putUninterruptibly(BlockingQueue<T> queue, T value) {
+        while(true){
+            try{
+                queue.put(value);
+                return;
+            }
+            catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Hash set of (date, time, folded vendor, amount) over the rows the store had when the import started,
+     * plus the rows recorded from each file once the import has moved past it. The rows of the file
+     * being inserted are not in it, so equal lines in one statement are all recorded.
+     * Slots hold a store row id and rows are compared by reading the store, so the set costs 8 bytes per slot.
+     * Only the inserting thread uses it, and only that thread adds rows during an import, which
+     * leaves the rows and folded ids it reads unchanged.
+     */
+    private static final class RowKeys {
+        private static final int EMPTY = -1;
+
+        private final TransactionStore store;
+        private int[] hashes;
+        private int[] rows;
+        private int size;
+        //folded id of each vendor seen in the import, -1 if the store had no such vendor
+        private final HashMap<String, Integer> foldedVendors = new HashMap<>();
+
+        private RowKeys(TransactionStore store) {
+            this.store = store;
+            int capacity = Integer.highestOneBit(Math.max(16, store.size() * 2 - 1)) << 1;
+            hashes = new int[capacity];
+            rows = new int[capacity];
+            Arrays.fill(rows, EMPTY);
+        }
+
+        //called under the read lock
+        static RowKeys of(TransactionStore store) {
+            RowKeys keys = new RowKeys(store);
+            for(int row = 0; row < store.size(); row++){
+                keys.add(row);
+            }
+            return keys;
+        }
+
+        //adds the rows of the recorded (first row, count) pairs, called under the read lock
+        void addRecorded(IntList recorded) {
+            for(int i = 0; i < recorded.size(); i += 2){
+                for(int row = recorded.get(i); row < recorded.get(i) + recorded.get(i + 1); row++){
+                    add(row);
+                }
+            }
+            //vendors the store did not have before may have been recorded
+            foldedVendors.clear();
+        }
+
+        //whether the store had the transaction, with the vendor in any case, before the file being inserted
+        boolean contains(LedgerService.NewTransaction transaction) {
+            int vendor = foldedVendors.computeIfAbsent(transaction.vendor(), store.vendors()::findFolded);
+            if(vendor < 0) return false;
+            int hash = hash(transaction.epochDay(), transaction.secondOfDay(), transaction.cents(), vendor);
+            return rows[find(hash, transaction.epochDay(), transaction.secondOfDay(), transaction.cents(), vendor)] != EMPTY;
+        }
+
+        private void add(int row) {
+            if((size + 1) * 2 > rows.length) grow();
+            int vendor = store.foldedVendorId(row);
+            int hash = hash(store.epochDay(row), store.secondOfDay(row), store.cents(row), vendor);
+            int slot = find(hash, store.epochDay(row), store.secondOfDay(row), store.cents(row), vendor);
+            if(rows[slot] != EMPTY) return;
+            hashes[slot] = hash;
+            rows[slot] = row;
+            size++;
+        }
+
+        private void grow() {
+            int[] oldHashes = hashes;
+            int[] oldRows = rows;
+            hashes = new int[oldRows.length * 2];
+            rows = new int[oldRows.length * 2];
+            Arrays.fill(rows, EMPTY);
+            int mask = rows.length - 1;
+            for(int old = 0; old < oldRows.length; old++){
+                if(oldRows[old] == EMPTY) continue;
+                int slot = oldHashes[old] & mask;
+                while(rows[slot] != EMPTY){
+                    slot = (slot + 1) & mask;
+                }
+                hashes[slot] = oldHashes[old];
+                rows[slot] = oldRows[old];
+            }
+        }
+
+        //slot holding the key, or the empty slot where it belongs
+        private int find(int hash, int epochDay, int secondOfDay, long cents, int vendor) {
+            int mask = rows.length - 1;
+            for(int slot = hash & mask; ; slot = (slot + 1) & mask){
+                int row = rows[slot];
+                if(row == EMPTY) return slot;
+                if(hashes[slot] == hash && store.epochDay(row) == epochDay && store.secondOfDay(row) == secondOfDay
+                        && store.cents(row) == cents && store.foldedVendorId(row) == vendor) return slot;
+            }
+        }
+
+        private static int hash(int epochDay, int secondOfDay, long cents, int vendor) {
+            long h = epochDay * 0x9E3779B97F4A7C15L + secondOfDay;
+            h = h * 0x9E3779B97F4A7C15L + cents;
+            h = h * 0x9E3779B97F4A7C15L + vendor;
+            h ^= h >>> 29;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
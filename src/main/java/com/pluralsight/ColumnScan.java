@@ -0,0 +1,131 @@
+package com.pluralsight;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/*
+ * Full scans for conditions no index covers, such as deposits only or an amount range.
+ * ------------------------------------------------
+ * A scan makes two passes, both split across the fork-join pool:
+ *     match    walks the epoch day and cents columns in row order and sets one bit per
+ *              matching row. Each task owns whole 64-row words of the bitmap, so no two
+ *              tasks write the same word. With the jdk.incubator.vector module loaded the
+ *              columns are compared a vector at a time (VectorScan), otherwise row by row.
+ *     gather   walks the date index and keeps the rows whose bit is set, so the result
+ *              comes out in date order. The left half is always added before the right half.
+ * Only the date range and amount range of the query are checked, vendor and description
+ * go through their indexes in QueryEngine. The caller holds the read lock.
+ */
+final class ColumnScan {
+    //rows per fork-join task, small enough to spread a million rows over every core
+    private static final int LEAF_ROWS = 1 << 16;
+
+    //true if the vector module is loaded (--add-modules jdk.incubator.vector) and not turned off with -Dtracker.vector=false
+    static final boolean VECTOR_AVAILABLE = Boolean.parseBoolean(System.getProperty("tracker.vector", "true"))
+            && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private final TransactionStore store;
+    private final DateIndex dateIndex;
+    private final ForkJoinPool pool;
+    private final boolean vector;
+
+    ColumnScan(TransactionStore store, DateIndex dateIndex) {
+        this(store, dateIndex, ForkJoinPool.commonPool(), VECTOR_AVAILABLE);
+    }
+
+    ColumnScan(TransactionStore store, DateIndex dateIndex, ForkJoinPool pool, boolean vector) {
+        if(vector && !VECTOR_AVAILABLE) throw new IllegalStateException("The jdk.incubator.vector module is not loaded");
+        this.store = store;
+        this.dateIndex = dateIndex;
+        this.pool = pool;
+        this.vector = vector;
+    }
+
+    /**
+     * Returns the rows inside the date range and amount range of the query, in date order.
+     */
+    IntList scan(TransactionQuery query) {
+        int rows = store.size();
+        long[] bits = new long[(rows + 63) >>> 6];
+        pool.invoke(new MatchTask(query, bits, 0, rows));
+        int from = query.getStartDay() == Integer.MIN_VALUE ? 0 : dateIndex.lowerBound(query.getStartDay());
+        int to = query.getEndDay() == Integer.MAX_VALUE ? dateIndex.size() : dateIndex.upperBound(query.getEndDay());
+        return pool.invoke(new GatherTask(bits, from, to));
+    }
+
+    //sets the bit of every matching row in [from, to), one row at a time
+    static void matchScalar(int[] epochDays, long[] cents, TransactionQuery query, long[] bits, int from, int to) {
+        int startDay = query.getStartDay();
+        int endDay = query.getEndDay();
+        for(int row = from; row < to; row++){
+            int epochDay = epochDays[row];
+            if(epochDay >= startDay && epochDay <= endDay && query.amountMatches(cents[row])) bits[row >>> 6] |= 1L << row;
+        }
+    }
+
+    /**
+     * Matches the rows [from, to), splitting at multiples of 64 so each task has its own words.
+     */
+    private final class MatchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final TransactionQuery query;
+        private final long[] bits;
+        private final int from;
+        private final int to;
+
+        MatchTask(TransactionQuery query, long[] bits, int from, int to) {
+            this.query = query;
+            this.bits = bits;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from <= LEAF_ROWS){
+                if(vector) VectorScan.match(store.epochDayColumn(), store.centsColumn(), query, bits, from, to);
+                else matchScalar(store.epochDayColumn(), store.centsColumn(), query, bits, from, to);
+                return;
+            }
+            int middle = ((from + to) >>> 1) & ~63;
+            invokeAll(new MatchTask(query, bits, from, middle), new MatchTask(query, bits, middle, to));
+        }
+    }
+
+    /**
+     * Collects the matching rows at the date index positions [from, to).
+     */
+    private final class GatherTask extends RecursiveTask<IntList> {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] bits;
+        private final int from;
+        private final int to;
+
+        GatherTask(long[] bits, int from, int to) {
+            this.bits = bits;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected IntList compute() {
+            if(to - from <= LEAF_ROWS){
+                IntList rows = new IntList();
+                for(int position = from; position < to; position++){
+                    int row = dateIndex.rowAt(position);
+                    if((bits[row >>> 6] & 1L << row) != 0) rows.add(row);
+                }
+                return rows;
+            }
+            int middle = (from + to) >>> 1;
+            GatherTask right = new GatherTask(bits, middle, to);
+            right.fork();
+            IntList rows = new GatherTask(bits, from, middle).compute();
+            rows.addAll(right.join());
+            return rows;
+        }
+    }
+}
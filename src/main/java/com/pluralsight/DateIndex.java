@@ -0,0 +1,162 @@
+package com.pluralsight;
+
+import java.util.Arrays;
+
+/*
+ * Row ids of the store ordered by date.
+ * ------------------------------------------------
+ * Rows on the same date are kept in row id order, which is the order they were
+ * loaded or recorded in. A date range is found with two binary searches, so a
+ * report only touches the rows it shows. The date of every position is kept next
+ * to its row id, so searches and merges read one array front to back.
+ */
+final class DateIndex {
+    private int[] rows = new int[1024];
+    private int[] days = new int[1024];
+    private int size;
+
+    /**
+     * Rebuilds the index from every row in the store with a single sort.
+     */
+    void rebuild(TransactionStore store) {
+        int count = store.size();
+        long[] keys = new long[count];
+        for(int row = 0; row < count; row++){
+            keys[row] = ((long) store.epochDay(row) << 32) | row;
+        }
+        Arrays.sort(keys);
+        if(rows.length < count){
+            rows = new int[count];
+            days = new int[count];
+        }
+        for(int i = 0; i < count; i++){
+            rows[i] = (int) keys[i];
+            days[i] = (int) (keys[i] >>> 32);
+        }
+        size = count;
+    }
+
+    /**
+     * Adds a row that was just appended to the store. It has the highest row id,
+     * so it goes after every row on the same date.
+     */
+    void insert(TransactionStore store, int row) {
+        int epochDay = store.epochDay(row);
+        int position = upperBound(epochDay);
+        ensureCapacity(size + 1);
+        System.arraycopy(rows, position, rows, position + 1, size - position);
+        System.arraycopy(days, position, days, position + 1, size - position);
+        rows[position] = row;
+        days[position] = epochDay;
+        size++;
+    }
+
+    /**
+     * Adds count rows that were just appended to the store, starting at row first.
+     * The batch is sorted and merged in from the back, one pass over the index however
+     * many rows it holds, where inserting them one by one would shift the index once per row.
+     */
+    void insertAll(TransactionStore store, int first, int count) {
+        if(count < 8){
+            for(int row = first; row < first + count; row++){
+                insert(store, row);
+            }
+            return;
+        }
+        long[] keys = new long[count];
+        for(int i = 0; i < count; i++){
+            keys[i] = ((long) store.epochDay(first + i) << 32) | (first + i);
+        }
+        Arrays.sort(keys);
+        ensureCapacity(size + count);
+        //every new row id is higher than the old ones, so on the same date the old rows stay first
+        int old = size - 1;
+        int added = count - 1;
+        int target = size + count - 1;
+        while(added >= 0){
+            int epochDay = (int) (keys[added] >>> 32);
+            if(old >= 0 && days[old] > epochDay){
+                rows[target] = rows[old];
+                days[target] = days[old];
+                old--;
+            }
+            else{
+                rows[target] = (int) keys[added];
+                days[target] = epochDay;
+                added--;
+            }
+            target--;
+        }
+        size += count;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if(capacity <= rows.length) return;
+        int length = Math.max(capacity, rows.length + (rows.length >> 1) + 1);
+        rows = Arrays.copyOf(rows, length);
+        days = Arrays.copyOf(days, length);
+    }
+
+    //first position whose date is on or after epochDay
+    int lowerBound(int epochDay) {
+        int low = 0;
+        int high = size;
+        while(low < high){
+            int middle = (low + high) >>> 1;
+            if(days[middle] < epochDay) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    //first position whose date is after epochDay
+    int upperBound(int epochDay) {
+        int low = 0;
+        int high = size;
+        while(low < high){
+            int middle = (low + high) >>> 1;
+            if(days[middle] <= epochDay) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Returns the given rows in date order, rows on the same date in row id order.
+     * Costs a sort of the rows, not a walk of the whole index.
+     */
+    static IntList orderByDate(TransactionStore store, IntList rows) {
+        long[] keys = new long[rows.size()];
+        for(int i = 0; i < keys.length; i++){
+            int row = rows.get(i);
+            keys[i] = ((long) store.epochDay(row) << 32) | row;
+        }
+        Arrays.sort(keys);
+        IntList ordered = new IntList(keys.length);
+        for(long key : keys){
+            ordered.add((int) key);
+        }
+        return ordered;
+    }
+
+    //first position after row, which is on epochDay, rows added since row was read do not change it
+    int positionAfter(int epochDay, int row) {
+        int low = lowerBound(epochDay);
+        int high = upperBound(epochDay);
+        while(low < high){
+            int middle = (low + high) >>> 1;
+            if(rows[middle] <= row) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+        //row id at a position of the date order
+    int rowAt(int position) {
+        return rows[position];
+    }
+
+    int size() {
+        return size;
+    }
+}
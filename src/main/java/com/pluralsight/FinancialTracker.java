@@ -1,13 +1,26 @@
 package com.pluralsight;
 
+import javax.management.JMException;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.time.Month;
 import java.time.format.DateTimeFormatter;
+import java.time.format.TextStyle;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
 import java.util.Scanner;
-import java.util.function.Predicate;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
 
 /*
  * Capstone skeleton – personal finance tracker.
@@ -22,7 +35,25 @@ public class FinancialTracker {
     /* ------------------------------------------------------------------
        Shared data and formatters
        ------------------------------------------------------------------ */
-    private static final ArrayList<Transaction> transactions = new ArrayList<>();
+    private static final TransactionStore transactions = new TransactionStore();
+    //row ids in date order, every listing walks this instead of the store
+    private static final DateIndex dateIndex = new DateIndex();
+    //case-insensitive vendor, description and keyword lookups
+    private static final TextIndex textIndex = new TextIndex();
+    //scans that no index covers, such as deposits only, split across cores
+    private static final ColumnScan columnScan = new ColumnScan(transactions, dateIndex);
+    private static final QueryEngine queryEngine = new QueryEngine(transactions, dateIndex, textIndex, columnScan);
+    //top vendors, largest payments, spending by month and payment sizes
+    private static final LedgerAnalytics analytics = new LedgerAnalytics(transactions, dateIndex);
+    //totals per day, month, year and vendor, kept up to date with every transaction
+    private static final Rollups rollups = new Rollups();
+    //every report and every new transaction goes through here, so transactions can be recorded from any thread
+    private static final LedgerService ledger = new LedgerService(transactions, dateIndex, textIndex, rollups);
+    //rows of recent date, vendor and custom search reports, dropped when a new transaction matches them
+    private static final QueryCache queryCache = new QueryCache(Integer.getInteger("tracker.cacheEntries", 64),
+            Long.getLong("tracker.cacheRows", 4_000_000));
+    //latency and counters of loads, recorded batches, reports, imports and saves, also over JMX and JFR
+    private static final Metrics metrics = new Metrics();
     private static final String FILE_NAME = "transactions.csv";
 
     private static final String DATE_PATTERN = "yyyy-MM-dd";
@@ -31,11 +62,46 @@ public class FinancialTracker {
     private static final DateTimeFormatter DATE_FMT = DateTimeFormatter.ofPattern(DATE_PATTERN);
     private static final DateTimeFormatter TIME_FMT = DateTimeFormatter.ofPattern(TIME_PATTERN);
 
+    //journal of transactions recorded since the main file was last rewritten, null if the file could not be read
+    private static TransactionJournal journal;
+    private static final TransactionJournal.FsyncPolicy FSYNC_POLICY = fsyncPolicy(System.getProperty("tracker.fsync", "ALWAYS"));
+    private static final long COMPACTION_INTERVAL_MINUTES = 5;
+    private static final long SYNC_INTERVAL_MILLIS = 1000;
+    private static ScheduledExecutorService maintenance;
+    //the main file and the rollups, snapshot and journal kept for it, set by loadTransactions
+    private static Path mainFile;
+    private static Path rollupsFile;
+    private static Path snapshotFile;
+    private static Path journalFile;
+
+    //rows per page of a console report, 0 prints the whole report without stopping
+    private static final int PAGE_SIZE = Integer.getInteger("tracker.pageSize", 0);
+    //what parseCents returns for an amount that is not a number
+    private static final long INVALID_AMOUNT = Long.MIN_VALUE;
+
+    //how many malformed lines are listed after a load before the rest are only counted
+    private static final int MAX_REPORTED_LINES = 10;
+    //malformed lines skipped so far, for the rejected rows of a load
+    private static long malformedLines;
+
+    //the rows of a date or vendor report with their totals
+    private record TotaledRows(IntList rows, Rollups.Totals totals) {
+    }
+
     /* ------------------------------------------------------------------
        Main menu
        ------------------------------------------------------------------ */
     public static void main(String[] args) {
+        boolean printStats = args.length > 0 && args[0].equals("--stats");
+        if(printStats) args = Arrays.copyOfRange(args, 1, args.length);
+        publishMetrics();
+        if(args.length > 0){
+            runCommand(args);
+            if(printStats) System.out.print(metrics.appendReport(new StringBuilder()));
+            return;
+        }
         loadTransactions(FILE_NAME);
+        ledger.setQueryCache(queryCache);
 
         Scanner scanner = new Scanner(System.in);
         boolean running = true;
@@ -58,17 +124,24 @@ public class FinancialTracker {
                 default -> System.out.println("Invalid option");
             }
         }
-        try(BufferedWriter writer = new BufferedWriter(new FileWriter(FILE_NAME))){
-            for(Transaction transaction : transactions){
-                LocalTime time = transaction.getTime();
-                String formattedTime = time.format(TIME_FMT);
-                writer.write(transaction.getDate() +  "|" +  formattedTime + "|" + transaction.getDescription() + "|" +  transaction.getVendor() + "|" + transaction.getAmount() + "\n");
-            }
-        }
-        catch (IOException e) {
-            System.out.println("File update unsuccessful");
-        }
+        closeJournal();
         scanner.close();
+        if(printStats) System.out.print(metrics.appendReport(new StringBuilder()));
+    }
+
+    //times recorded batches and publishes the metrics over JMX, in the background since starting JMX takes longer than a load
+    private static void publishMetrics(){
+        ledger.setMetrics(metrics);
+        Thread publisher = new Thread(() -> {
+            try{
+                metrics.register();
+            }
+            catch(JMException e){
+                System.err.println("Could not publish the metrics over JMX: " + e.getMessage());
+            }
+        }, "metrics-jmx");
+        publisher.setDaemon(true);
+        publisher.start();
     }
 
     /* ------------------------------------------------------------------
@@ -79,32 +152,221 @@ public class FinancialTracker {
      * Load transactions from FILE_NAME.
      * • If the file doesn’t exist, create an empty one so that future writes succeed.
      * • Each line looks like: date|time|description|vendor|amount
+     * • A binary snapshot made from this version of the file is mapped instead of parsing the file.
+     * • Otherwise the file is parsed in parallel chunks by TransactionLoader and a snapshot is saved.
+     * • The transactions are sorted once at the end.
+     * • Transactions recorded after the file was last rewritten are replayed from the journal.
+     * • Rollups saved for this version of the file are reused, otherwise they are rebuilt and saved.
+     * • The load is timed with the rows read, the lines skipped and the bytes of the files read.
      */
     public static void loadTransactions(String fileName) {
-        try(BufferedReader reader = new BufferedReader(new FileReader(fileName))){
-            String input;
-            while((input = reader.readLine()) != null){
-                String[] token = input.split("\\|");
-                LocalDate date = parseDate(token[0]);
-                LocalTime time = parseTime(token[1]);
-                String description = capitalizeFirst(token[2]);
-                String vendor = capitalizeFirst(token[3]);
-                Double convertedAmount = parseDouble(token[4]);
-                if(convertedAmount != null){
-                    transactions.add(new Transaction(date, time, description, vendor, convertedAmount));
-                }
-                sortTransactions();
-            }
+        Metrics.Timing timing = metrics.start(Metrics.Operation.LOAD);
+        long malformedBefore = malformedLines;
+        Path path = Path.of(fileName);
+        mainFile = path;
+        rollupsFile = path.resolveSibling(path.getFileName() + ".rollups");
+        snapshotFile = path.resolveSibling(path.getFileName() + ".snapshot");
+        journalFile = path.resolveSibling(path.getFileName() + ".journal");
+        boolean mapped = readLedger(fileName);
+        timing.rows(transactions.size(), malformedLines - malformedBefore)
+                .bytesRead(fileSize(mapped ? snapshotFile : mainFile) + fileSize(journalFile))
+                .stop();
+    }
+
+    //the journal's fsync policy named by tracker.fsync, ALWAYS when the name is not one of them
+    private static TransactionJournal.FsyncPolicy fsyncPolicy(String name){
+        try{
+            return TransactionJournal.FsyncPolicy.valueOf(name.trim().toUpperCase(Locale.ROOT));
         }
-        catch(IOException ex){
+        catch(IllegalArgumentException e){
+            System.err.println("Unknown tracker.fsync \"" + name + "\", expected one of "
+                    + Arrays.toString(TransactionJournal.FsyncPolicy.values()) + ", using ALWAYS");
+            return TransactionJournal.FsyncPolicy.ALWAYS;
+        }
+    }
+
+    //loads the main file and the journal into the store, true if the snapshot was mapped instead of parsing the file
+    private static boolean readLedger(String fileName){
+        Path path = mainFile;
+        if(loadSnapshot()){
+            openLedger(transactions.size());
+            return true;
+        }
+        try{
+            TransactionLoader.LoadResult loaded = TransactionLoader.load(path);
+            transactions.addAll(loaded.getStore());
+            reportMalformedLines(fileName, loaded.getMalformed());
+        }
+        catch(NoSuchFileException ex){
             System.err.println("File does not exist");
             try(BufferedWriter writer = new BufferedWriter(new FileWriter(fileName))){
                 writer.flush();
                 System.out.println("File created since there is no file existing.\n\n");
             } catch (IOException e) {
                 System.err.println("Error creating file");
+                return false;
             }
         }
+        catch(IOException ex){
+            System.err.println("Error reading file");
+            return false;
+        }
+        saveSnapshot();
+        openLedger(transactions.size());
+        return false;
+    }
+
+    //size of a file in bytes, 0 if it cannot be read
+    private static long fileSize(Path file){
+        try{
+            return Files.size(file);
+        }
+        catch(IOException e){
+            return 0;
+        }
+    }
+
+    //replays the journal on top of the fileRows rows of the main file and builds the indexes
+    private static void openLedger(int fileRows){
+        openJournal(mainFile);
+        sortTransactions();
+        textIndex.rebuild(transactions);
+        loadRollups(fileRows);
+    }
+
+    //maps the snapshot of the main file into the store, false if there is none for this version of the file
+    private static boolean loadSnapshot(){
+        try{
+            return TransactionSnapshot.read(snapshotFile, mainFile, transactions);
+        }
+        catch(IOException e){
+            System.err.println("Could not read the snapshot (" + e.getMessage() + "), loading " + mainFile.getFileName());
+            return false;
+        }
+    }
+
+    //saves every row of the store as the snapshot, only valid while the main file holds every row
+    private static void saveSnapshot(){
+        try{
+            TransactionSnapshot.write(snapshotFile, transactions, transactions.size(), mainFile);
+        }
+        catch(IOException e){
+            System.err.println("Could not save the snapshot, " + mainFile.getFileName() + " will be parsed on the next start");
+        }
+    }
+
+    //reuses the rollups saved for the main file, or rebuilds them from its rows, then adds the journal rows
+    private static void loadRollups(int fileRows){
+        boolean loaded;
+        try{
+            loaded = rollups.load(rollupsFile, mainFile);
+        }
+        catch(IOException e){
+            loaded = false;
+        }
+        if(!loaded){
+            rollups.rebuild(transactions, fileRows);
+            saveRollups();
+        }
+        for(int row = fileRows; row < transactions.size(); row++){
+            rollups.add(transactions, row);
+        }
+    }
+
+    //saves the rollups, only valid while the main file holds every row
+    private static void saveRollups(){
+        try{
+            rollups.save(rollupsFile, mainFile);
+        }
+        catch(IOException e){
+            System.err.println("Could not save the totals, they will be rebuilt on the next start");
+        }
+    }
+
+    //replays the journal into the store and starts the background compaction
+    private static void openJournal(Path path){
+        Path journalPath = journalFile;
+        List<TransactionParser.MalformedLine> malformed = new ArrayList<>();
+        try{
+            journal = TransactionJournal.open(path, journalPath, FSYNC_POLICY, transactions, malformed);
+        }
+        catch(IOException e){
+            System.err.println("Error opening the journal, new transactions will not be saved");
+            return;
+        }
+        reportMalformedLines(journalPath.getFileName().toString(), malformed);
+        ledger.setJournal(journal);
+
+        maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance.scheduleWithFixedDelay(FinancialTracker::compactJournal, COMPACTION_INTERVAL_MINUTES, COMPACTION_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        if(FSYNC_POLICY == TransactionJournal.FsyncPolicy.INTERVAL){
+            maintenance.scheduleWithFixedDelay(FinancialTracker::syncJournal, SYNC_INTERVAL_MILLIS, SYNC_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    //rewrites the main file from the store if the journal has anything in it
+    private static void compactJournal(){
+        try{
+            ledger.whileIdle(() -> {
+                if(journal.records() > 0){
+                    Metrics.Timing timing = metrics.start(Metrics.Operation.SAVE);
+                    journal.compact(transactions, dateIndex);
+                    saveSnapshot();
+                    saveRollups();
+                    timing.rows(transactions.size(), 0)
+                            .bytesWritten(fileSize(mainFile) + fileSize(snapshotFile) + fileSize(rollupsFile))
+                            .stop();
+                }
+            });
+        }
+        catch(IOException e){
+            System.err.println("File update unsuccessful");
+        }
+    }
+
+    private static void syncJournal(){
+        try{
+            journal.sync();
+        }
+        catch(IOException e){
+            System.err.println("Journal sync unsuccessful");
+        }
+    }
+
+    //stops the background work and folds the journal into the main file on exit
+    private static void closeJournal(){
+        if(journal == null) return;
+        maintenance.shutdown();
+        try{
+            maintenance.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        compactJournal();
+        try{
+            journal.close();
+        }
+        catch(IOException e){
+            System.err.println("File update unsuccessful");
+        }
+    }
+
+    //prints one summary of the lines that were skipped while loading instead of an error per line
+    private static void reportMalformedLines(String fileName, List<TransactionParser.MalformedLine> malformed){
+        if(malformed.isEmpty()) return;
+        malformedLines += malformed.size();
+        System.err.println("Skipped " + malformed.size() + " malformed line(s) in " + fileName + ":");
+        int shown = Math.min(malformed.size(), MAX_REPORTED_LINES);
+        for(int i = 0; i < shown; i++){
+            TransactionParser.MalformedLine line = malformed.get(i);
+            System.err.println("  line " + line.lineNumber() + ": " + line.reason());
+        }
+        if(malformed.size() > shown) System.err.println("  ... and " + (malformed.size() - shown) + " more");
     }
 
     /**
@@ -147,22 +409,132 @@ public class FinancialTracker {
         String vendor = scanner.nextLine().trim();
         System.out.println("Amount you want to pay(Positive number): ");
         String amount = scanner.nextLine().trim();
-        Double convertedAmount = parseDouble(amount);
-        if(convertedAmount != null && convertedAmount <= 0) {
+        long cents = parseCents(amount);
+        if(cents != INVALID_AMOUNT && cents <= 0) {
             System.err.println("The amount you entered is negative");
             return;
         }
         String[] dateTimeSplit = dateAndTime.split(" ");
         LocalDate date = parseDate(dateTimeSplit[0]);
         LocalTime time = parseTime(dateTimeSplit[1]);
-        if(convertedAmount == null || date == null || time == null || description.isEmpty() || vendor.isEmpty()) {
+        if(cents == INVALID_AMOUNT || date == null || time == null || description.isEmpty() || vendor.isEmpty()) {
             System.out.println("You did not fill in the vendor/description");
             return;
         }
-        double finalAmount = type.equalsIgnoreCase("deposit") ? convertedAmount : -(convertedAmount);
-        transactions.add(new Transaction(date, time, capitalizeFirst(description), capitalizeFirst(vendor), finalAmount));
+        long finalAmount = type.equalsIgnoreCase("deposit") ? cents : -cents;
+        int epochDay = (int) date.toEpochDay();
+        description = capitalizeFirst(description);
+        vendor = capitalizeFirst(vendor);
+        try{
+            //the journal is written first so a transaction is never shown as saved when it is not
+            ledger.record(new LedgerService.NewTransaction(epochDay, time.toSecondOfDay(), finalAmount, description, vendor));
+        }
+        catch(IOException e){
+            System.err.println("Could not save the " + type + ", please try again");
+            return;
+        }
         System.out.println(type + " successful!");
-        sortTransactions();
+    }
+
+    /* ------------------------------------------------------------------
+       Command line
+       ------------------------------------------------------------------ */
+
+    /**
+     * Runs one command without the menus:
+     *     --import-csv <csv file> <snapshot file>   converts a CSV ledger into a snapshot
+     *     --export-csv <snapshot file> <csv file>   converts a snapshot back into a CSV ledger
+     *     --import <statement file>...              adds the transactions in the files to the ledger
+     * Any of them, or the menus when there is no command, can follow --stats to print the metrics when done.
+     */
+    private static void runCommand(String[] args){
+        switch (args[0]) {
+            case "--import-csv" -> {
+                if(args.length != 3) printUsage();
+                else importCsv(Path.of(args[1]), Path.of(args[2]));
+            }
+            case "--export-csv" -> {
+                if(args.length != 3) printUsage();
+                else exportCsv(Path.of(args[1]), Path.of(args[2]));
+            }
+            case "--import" -> {
+                if(args.length < 2) printUsage();
+                else importStatements(args);
+            }
+            default -> printUsage();
+        }
+    }
+
+    private static void printUsage(){
+        System.err.println("Usage: FinancialTracker [--stats] [--import-csv <csv file> <snapshot file> | --export-csv <snapshot file> <csv file>"
+                + " | --import <statement file>...]");
+    }
+
+    /**
+     * Bulk import of statement files in the transactions file format into the ledger.
+     * Rows already in the ledger or in an earlier file with the same date, time, vendor and amount
+     * are skipped, and the ledger is saved once at the end.
+     */
+    private static void importStatements(String[] args){
+        loadTransactions(FILE_NAME);
+        if(journal == null){
+            System.err.println("The ledger could not be opened, nothing was imported");
+            return;
+        }
+        List<Path> files = new ArrayList<>();
+        for(int i = 1; i < args.length; i++){
+            files.add(Path.of(args[i]));
+        }
+        long started = System.nanoTime();
+        Metrics.Timing timing = metrics.start(Metrics.Operation.IMPORT);
+        BulkImporter importer = new BulkImporter(ledger, transactions, Runtime.getRuntime().availableProcessors());
+        BulkImporter.Result result = importer.importFiles(files);
+        double seconds = (System.nanoTime() - started) / 1e9;
+        for(Path file : files){
+            timing.bytesRead(fileSize(file));
+        }
+        timing.rows(result.lines - result.rejectedCount(), result.rejectedCount()).stop();
+        for(int file = 0; file < files.size(); file++){
+            reportMalformedLines(files.get(file).toString(), result.rejected.get(file));
+        }
+        System.out.printf("Read %d lines from %d file(s) in %.1f s: %d imported, %d duplicates skipped, %d rejected%n",
+                result.lines, files.size(), seconds, result.imported, result.duplicates, result.rejectedCount());
+        if(result.failure != null) System.err.println("Import stopped: " + result.failure.getMessage());
+        closeJournal();
+    }
+
+    private static void importCsv(Path csv, Path snapshot){
+        try{
+            TransactionLoader.LoadResult loaded = TransactionLoader.load(csv);
+            reportMalformedLines(csv.getFileName().toString(), loaded.getMalformed());
+            TransactionStore store = loaded.getStore();
+            TransactionSnapshot.write(snapshot, store, store.size(), csv);
+            System.out.println("Imported " + store.size() + " transactions into " + snapshot);
+        }
+        catch(IOException e){
+            System.err.println("Import unsuccessful: " + e.getMessage());
+        }
+    }
+
+    private static void exportCsv(Path snapshot, Path csv){
+        TransactionStore store = new TransactionStore();
+        try{
+            if(!TransactionSnapshot.read(snapshot, null, store)){
+                System.err.println("Snapshot does not exist");
+                return;
+            }
+            try(OutputStream output = Files.newOutputStream(csv)){
+                ReportWriter report = new ReportWriter(output, ReportWriter.Format.CSV, store);
+                for(int row = 0; row < store.size(); row++){
+                    report.write(row);
+                }
+                report.finish();
+            }
+            System.out.println("Exported " + store.size() + " transactions to " + csv);
+        }
+        catch(IOException | UncheckedIOException e){
+            System.err.println("Export unsuccessful: " + e.getMessage());
+        }
     }
 
     /* ------------------------------------------------------------------
@@ -177,15 +549,17 @@ public class FinancialTracker {
             System.out.println("D) Deposits");
             System.out.println("P) Payments");
             System.out.println("R) Reports");
+            System.out.println("E) Export");
             System.out.println("H) Home");
 
             String input = scanner.nextLine().trim();
 
             switch (input.toUpperCase()) {
-                case "A" -> displayLedger();
-                case "D" -> displayDeposits();
-                case "P" -> displayPayments();
+                case "A" -> displayLedger(scanner);
+                case "D" -> displayDeposits(scanner);
+                case "P" -> displayPayments(scanner);
                 case "R" -> reportsMenu(scanner);
+                case "E" -> exportTransactions(scanner);
                 case "H" -> running = false;
                 default -> System.out.println("Invalid option");
             }
@@ -196,16 +570,55 @@ public class FinancialTracker {
        Display helpers: show data in neat columns
        ------------------------------------------------------------------ */
 
-    private static void displayLedger() {
-        filteredTransactions("You have no transactions recorded.", transaction -> true);
+    /**
+     * Prints the whole ledger in date order straight from the date index, so the first page shows
+     * without collecting every row id first. Like displayRows it formats a batch under the read lock
+     * and prints it without. Rows recorded after the report started are left out, and it resumes
+     * after the last row printed, so rows inserted in between cannot show twice or push one out.
+     */
+    private static void displayLedger(Scanner scanner) {
+        ReportWriter report = openReport(scanner);
+        Lock lock = ledger.readLock();
+        //time to the first page, the rest waits on the console
+        Metrics.Timing timing = metrics.start(Metrics.Operation.QUERY);
+        int end = 0;
+        Rollups.Totals balance = null;
+        int lastRow = -1;
+        while(true){
+            lock.lock();
+            try{
+                if(balance == null){
+                    end = transactions.size();
+                    balance = rollups.total();
+                }
+                int position = lastRow < 0 ? 0 : dateIndex.positionAfter(transactions.epochDay(lastRow), lastRow);
+                for(boolean room = true; room && report.rows() < end && position < dateIndex.size(); position++){
+                    int row = dateIndex.rowAt(position);
+                    if(row >= end) continue;
+                    room = report.add(row);
+                    lastRow = row;
+                }
+            }
+            finally{
+                lock.unlock();
+            }
+            if(timing != null){
+                timing.rows(end, 0).stop();
+                timing = null;
+            }
+            if(!report.writeBuffered(report.rows() < end) || report.rows() == end) break;
+        }
+        report.finish();
+        if(end == 0) System.out.println("You have no transactions recorded.");
+        displayTotals("Balance", balance);
     }
 
-    private static void displayDeposits() {
-        filteredTransactions("You have no deposits made.", transaction -> transaction.getAmount() > 0);
+    private static void displayDeposits(Scanner scanner) {
+        displayRows(scanner, "You have no deposits made.", query(() -> columnScan.scan(new TransactionQuery().amountAtLeast(1))));
     }
 
-    private static void displayPayments() {
-        filteredTransactions("You have no payments made.", transaction -> transaction.getAmount() < 0);
+    private static void displayPayments(Scanner scanner) {
+        displayRows(scanner, "You have no payments made.", query(() -> columnScan.scan(new TransactionQuery().amountAtMost(-1))));
     }
 
     /* ------------------------------------------------------------------
@@ -222,17 +635,29 @@ public class FinancialTracker {
             System.out.println("4) Previous Year");
             System.out.println("5) Search by Vendor");
             System.out.println("6) Custom Search");
+            System.out.println("7) Search by Description Keywords");
+            System.out.println("8) Top Vendors by Spending");
+            System.out.println("9) Largest Payments");
+            System.out.println("10) Vendor Spending by Month");
+            System.out.println("11) Payment Sizes");
+            System.out.println("12) Statistics");
             System.out.println("0) Back");
 
             String input = scanner.nextLine().trim();
 
             switch (input) {
-                case "1" -> monthToDate();
-                case "2" -> checkPreviousMonth();
-                case "3" -> yearToDate();
-                case "4" -> checkPreviousYear();
+                case "1" -> monthToDate(scanner);
+                case "2" -> checkPreviousMonth(scanner);
+                case "3" -> yearToDate(scanner);
+                case "4" -> checkPreviousYear(scanner);
                 case "5" -> checkVendorTrans(scanner);
                 case "6" -> customSearch(scanner);
+                case "7" -> checkDescriptionKeywords(scanner);
+                case "8" -> topVendors(scanner);
+                case "9" -> largestPayments(scanner);
+                case "10" -> vendorSpendingByMonth(scanner);
+                case "11" -> paymentSizes(scanner);
+                case "12" -> statistics();
                 case "0" -> running = false;
                 default -> System.out.println("Invalid option");
             }
@@ -243,104 +668,268 @@ public class FinancialTracker {
        Reports helper methods
     ------------------------------------------------------------------ */
 
-    private static void monthToDate(){
+    private static void monthToDate(Scanner scanner){
         LocalDate date = LocalDate.now();
-        filteredTransactions("No transactions made this month", transaction -> date.getYear() == transaction.getDate().getYear() && date.getMonthValue() == transaction.getDate().getMonthValue() && date.getDayOfMonth() >= transaction.getDate().getDayOfMonth());
+        filterByDateRange(scanner, "No transactions made this month", date.withDayOfMonth(1), date);
     }
 
-    private static void checkPreviousMonth(){
-        LocalDate date = LocalDate.now();
-        filteredTransactions("No transactions made last month", transaction -> date.getYear() == transaction.getDate().getYear() && date.getMonthValue() - 1 == transaction.getDate().getMonthValue());
+    private static void checkPreviousMonth(Scanner scanner){
+        LocalDate previousMonth = LocalDate.now().minusMonths(1);
+        filterByDateRange(scanner, "No transactions made last month", previousMonth.withDayOfMonth(1), previousMonth.withDayOfMonth(previousMonth.lengthOfMonth()));
     }
 
-    private static void yearToDate(){
+    private static void yearToDate(Scanner scanner){
         LocalDate date = LocalDate.now();
-        filteredTransactions("No transactions this year were made.", transaction -> date.getYear() == transaction.getDate().getYear() && date.getDayOfYear() >= transaction.getDate().getDayOfYear());
+        filterByDateRange(scanner, "No transactions this year were made.", date.withDayOfYear(1), date);
     }
 
-    private static void checkPreviousYear(){
-        LocalDate date = LocalDate.now();
-        filteredTransactions("No transactions made this month", transaction -> date.getYear() - 1 == transaction.getDate().getYear());
+    private static void checkPreviousYear(Scanner scanner){
+        LocalDate previousYear = LocalDate.now().minusYears(1);
+        filterByDateRange(scanner, "No transactions made last year", previousYear.withDayOfYear(1), previousYear.withDayOfYear(previousYear.lengthOfYear()));
+    }
+
+    //shows the transactions from start to end, both days included, by binary searching the date index
+    private static void filterByDateRange(Scanner scanner, String message, LocalDate start, LocalDate end){
+        TotaledRows report = cachedRows(new TransactionQuery().between(start, end),
+                () -> collectRows(dateIndex.lowerBound((int) start.toEpochDay()),
+                        dateIndex.upperBound((int) end.toEpochDay()), row -> true),
+                () -> rollups.between(start, end));
+        displayRows(scanner, message, report.rows());
+        if(!report.rows().isEmpty()) displayTotals("Totals", report.totals());
     }
 
     private static void checkVendorTrans(Scanner scanner){
         System.out.println("Enter the vendor name: ");
         String vendor = scanner.nextLine().trim();
-        filteredTransactions("No vendors matched any transactions", transaction -> vendor.equalsIgnoreCase(transaction.getVendor()));
+        TotaledRows report = cachedRows(new TransactionQuery().vendor(vendor),
+                () -> DateIndex.orderByDate(transactions, textIndex.vendorRows(vendor)),
+                () -> rollups.vendor(vendor));
+        displayRows(scanner, "No vendors matched any transactions", report.rows());
+        if(!report.rows().isEmpty()) displayTotals("Totals", report.totals());
     }
 
-    /**
-     *
-     * @param message is the
-     * @param predicate can be thought of a "subpackage". It is part of java. It allows you to pass a condition as an argument. With that, for every primitive/nonprimitive
-     *                  type you want to check with a condition, you do predicate.test(variable). This returns a boolean true or false.
-     *                  You can also have 2 predicates and can check and/or by condition1.and(condition2).test(value)
-     */
-    private static void filteredTransactions(String message, Predicate<Transaction> predicate){
-        boolean found = false;
-        for(Transaction transaction : transactions){
-            if(predicate.test(transaction)){
-                System.out.println(transaction.toString());
-                found = true;
-            }
-        }
-        if(!found) System.out.println(message);
+    //finds descriptions containing words that start with what was typed, e.g. "cour" finds "Online course subscription"
+    private static void checkDescriptionKeywords(Scanner scanner){
+        System.out.println("Enter words from the description: ");
+        String keywords = scanner.nextLine().trim();
+        displayRows(scanner, "No descriptions matched your words",
+                query(() -> DateIndex.orderByDate(transactions, textIndex.keywordRows(keywords))));
     }
 
     /* ------------------------------------------------------------------
-       custom search methods/menu
+       Analytics reports
        ------------------------------------------------------------------ */
 
-    private static void filterTransactionsByDate(LocalDate start, LocalDate end, ArrayList<Transaction> filteredList) {
-        customSearchFilter(transaction -> (start == null || !transaction.getDate().isBefore(start)) && (end == null || !transaction.getDate().isAfter(end)), filteredList);
+    private static void topVendors(Scanner scanner){
+        int[] period = readPeriod(scanner);
+        int count = readCount(scanner, "How many vendors? (default 10)");
+        List<LedgerAnalytics.VendorSpend> vendors = query(() -> analytics.topVendors(count, period[0], period[1]));
+        if(vendors.isEmpty()){
+            System.out.println("No payments were made in that period");
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        for(int i = 0; i < vendors.size(); i++){
+            LedgerAnalytics.VendorSpend vendor = vendors.get(i);
+            lines.append(i + 1).append(") ").append(vendor.vendor()).append(": ");
+            TransactionFormat.appendCents(lines, vendor.cents()).append(" in ").append(vendor.payments()).append(" payments\n");
+        }
+        System.out.print(lines);
     }
 
-    private static void filterTransactionsByDescription(String description, ArrayList<Transaction> filteredList) {
-        customSearchFilter(transaction -> description.equalsIgnoreCase(transaction.getDescription()), filteredList);
+    private static void largestPayments(Scanner scanner){
+        int[] period = readPeriod(scanner);
+        int count = readCount(scanner, "How many payments? (default 10)");
+        displayRows(scanner, "No payments were made in that period", query(() -> analytics.largestPayments(count, period[0], period[1])));
     }
 
-    private static void filterTransactionsByVendor(String vendor, ArrayList<Transaction> filteredList) {
-        customSearchFilter(transaction -> vendor.equalsIgnoreCase(transaction.getVendor()), filteredList);
+    //spending per month of one year, one line per top vendor
+    private static void vendorSpendingByMonth(Scanner scanner){
+        System.out.println("Enter the year(yyyy)(Optional, default this year): ");
+        String yearInput = scanner.nextLine().trim();
+        int year;
+        try{
+            year = yearInput.isEmpty() ? LocalDate.now().getYear() : Integer.parseInt(yearInput);
+            LocalDate.of(year, 1, 1);
+        }
+        catch(RuntimeException e){
+            System.err.println("Invalid year");
+            return;
+        }
+        int count = readCount(scanner, "How many vendors? (default 10)");
+        LedgerAnalytics.SpendingMatrix matrix = query(() -> analytics.vendorMonths(year, count));
+        int nameWidth = "Vendor".length();
+        for(String vendor : matrix.vendors()){
+            nameWidth = Math.max(nameWidth, vendor.length());
+        }
+        StringBuilder table = new StringBuilder();
+        table.append(String.format("%-" + nameWidth + "s", "Vendor"));
+        for(Month month : Month.values()){
+            table.append(String.format("%12s", month.getDisplayName(TextStyle.SHORT, Locale.US)));
+        }
+        table.append(String.format("%14s%n", "Total"));
+        for(int vendor = 0; vendor < matrix.vendors().size(); vendor++){
+            table.append(String.format("%-" + nameWidth + "s", matrix.vendors().get(vendor)));
+            long total = 0;
+            for(long cents : matrix.cents()[vendor]){
+                table.append(String.format("%12s", TransactionFormat.appendCents(new StringBuilder(), cents)));
+                total += cents;
+            }
+            table.append(String.format("%14s%n", TransactionFormat.appendCents(new StringBuilder(), total)));
+        }
+        System.out.print(table);
     }
 
-    private static void filterTransactionsByAmount(String lowestAmount, String highestAmount, ArrayList<Transaction> filteredList){
-        Double lowestConvertedAmount = parseDouble(lowestAmount);
-        Double highestConvertedAmount = parseDouble(highestAmount);
+    //median and percentiles of the payment sizes, read from a histogram so they are within 1%
+    private static void paymentSizes(Scanner scanner){
+        int[] period = readPeriod(scanner);
+        LogHistogram sizes = query(() -> analytics.paymentSizes(period[0], period[1]));
+        if(sizes.count() == 0){
+            System.out.println("No payments were made in that period");
+            return;
+        }
+        StringBuilder line = new StringBuilder("Payment sizes, percentiles within 1%: {payments: ").append(sizes.count());
+        TransactionFormat.appendCents(line.append(", smallest: "), sizes.min());
+        TransactionFormat.appendCents(line.append(", median: "), sizes.percentile(50));
+        TransactionFormat.appendCents(line.append(", 90th percentile: "), sizes.percentile(90));
+        TransactionFormat.appendCents(line.append(", 95th percentile: "), sizes.percentile(95));
+        TransactionFormat.appendCents(line.append(", 99th percentile: "), sizes.percentile(99));
+        TransactionFormat.appendCents(line.append(", largest: "), sizes.max());
+        TransactionFormat.appendCents(line.append(", average: "), sizes.mean());
+        System.out.println(line.append('}'));
+    }
 
-        if(lowestConvertedAmount != null && highestConvertedAmount != null){
-            customSearchFilter(transaction -> lowestConvertedAmount <= Math.abs(transaction.getAmount()) && highestConvertedAmount >= Math.abs(transaction.getAmount()), filteredList);
+    //optional start and end dates as epoch days, an end left out stays open
+    private static int[] readPeriod(Scanner scanner){
+        System.out.println("Enter start date(yyyy-MM-dd)(Optional): ");
+        LocalDate start = parseDate(scanner.nextLine().trim());
+        System.out.println("Enter end date(yyyy-MM-dd)(Optional): ");
+        LocalDate end = parseDate(scanner.nextLine().trim());
+        return new int[]{start == null ? Integer.MIN_VALUE : (int) start.toEpochDay(),
+                end == null ? Integer.MAX_VALUE : (int) end.toEpochDay()};
+    }
+
+    //a positive number typed in, 10 if nothing or something else was typed
+    private static int readCount(Scanner scanner, String prompt){
+        System.out.println(prompt);
+        String input = scanner.nextLine().trim();
+        if(input.isEmpty()) return 10;
+        try{
+            int count = Integer.parseInt(input);
+            if(count > 0) return count;
+        }
+        catch(NumberFormatException e){
+            //shown as invalid below
         }
-        else if(lowestConvertedAmount != null){
-            customSearchFilter(transaction -> lowestConvertedAmount <= transaction.getAmount(), filteredList);
+        System.err.println("Invalid number, showing 10");
+        return 10;
+    }
+
+    //prints one line with the count, deposits, payments and net of a rollup
+    private static void displayTotals(String label, Rollups.Totals totals){
+        StringBuilder line = new StringBuilder(label).append(": {transactions: ").append(totals.count());
+        TransactionFormat.appendCents(line.append(", deposits: "), totals.deposits());
+        TransactionFormat.appendCents(line.append(", payments: "), totals.payments());
+        TransactionFormat.appendCents(line.append(", net: "), totals.net());
+        System.out.println(line.append('}'));
+    }
+
+    /**
+     * Prints the rows in the order given, rows never change once added so they can be collected earlier.
+     * Each batch is formatted under the read lock and printed after giving it up, so a transaction
+     * being recorded waits for one batch to be formatted, not for the console to print the report.
+     */
+    private static void displayRows(Scanner scanner, String message, IntList rows){
+        ReportWriter report = openReport(scanner);
+        Lock lock = ledger.readLock();
+        for(int i = 0; i < rows.size(); ){
+            lock.lock();
+            try{
+                while(i < rows.size() && report.add(rows.get(i++))){
+                    //formats until the batch or the page is full
+                }
+            }
+            finally{
+                lock.unlock();
+            }
+            if(!report.writeBuffered(i < rows.size())) break;
         }
-        else if(highestConvertedAmount != null){
-            customSearchFilter(transaction -> highestConvertedAmount >= transaction.getAmount(), filteredList);
+        report.finish();
+        if(rows.isEmpty()) System.out.println(message);
+    }
+
+    //rows at the positions [from, to) of the date index that match predicate, the caller holds the read lock
+    private static IntList collectRows(int from, int to, IntPredicate predicate){
+        IntList rows = new IntList();
+        for(int position = from; position < to; position++){
+            int row = dateIndex.rowAt(position);
+            if(predicate.test(row)) rows.add(row);
         }
+        return rows;
     }
 
     /**
-     *
-    removeIf is "another" way of removing elements from an arrayList. The logic here is since it is iterating through the list and removing it, some elements might be skipped.
-     IntelliJ suggested this change. You can also grab the negation(!) by writing negate() before test(value)
+     * A console report that stops after every PAGE_SIZE rows until Enter is pressed, if paging is on.
+     * It is filled with add and writeBuffered, and asks for the next page without holding the read lock.
      */
-    private static void customSearchFilter(Predicate<Transaction> predicate, ArrayList<Transaction> filteredList){
-        if(!filteredList.isEmpty()){
-            filteredList.removeIf(transaction -> predicate.negate().test(transaction));
+    private static ReportWriter openReport(Scanner scanner){
+        return new ReportWriter(System.out, ReportWriter.Format.TEXT, transactions, PAGE_SIZE, () -> {
+            System.out.println("Press Enter for more, or Q to stop");
+            return !scanner.nextLine().trim().equalsIgnoreCase("Q");
+        });
+    }
+
+    /**
+     * Writes every transaction in date order to a CSV or JSON file.
+     * CSV uses the same format as the transactions file, so an export can be loaded again.
+     */
+    private static void exportTransactions(Scanner scanner){
+        System.out.println("Export format(CSV/JSON): ");
+        String formatInput = scanner.nextLine().trim().toUpperCase();
+        if(!formatInput.equals("CSV") && !formatInput.equals("JSON")){
+            System.out.println("Invalid format");
             return;
         }
-        for(Transaction transaction : transactions){
-            if(predicate.test(transaction)){
-                filteredList.add(transaction);
-            }
+        ReportWriter.Format format = ReportWriter.Format.valueOf(formatInput);
+        System.out.println("File name: ");
+        String fileName = scanner.nextLine().trim();
+        if(fileName.isEmpty()) return;
+        try(OutputStream output = new FileOutputStream(fileName)){
+            ReportWriter report = new ReportWriter(output, format, transactions);
+            ledger.read(() -> {
+                for(int position = 0; position < dateIndex.size(); position++){
+                    report.write(dateIndex.rowAt(position));
+                }
+                report.finish();
+                return report;
+            });
+            System.out.println("Exported " + report.rows() + " transactions to " + fileName);
+        }
+        catch(IOException | UncheckedIOException e){
+            System.err.println("Export unsuccessful");
         }
     }
 
+    /* ------------------------------------------------------------------
+       custom search methods/menu
+       ------------------------------------------------------------------ */
+
+    //turns the optional amounts typed in a custom search into an amount range on the query
+    private static void filterTransactionsByAmount(String lowestAmount, String highestAmount, TransactionQuery query){
+        long lowestCents = lowestAmount.isEmpty() ? INVALID_AMOUNT : parseCents(lowestAmount);
+        long highestCents = highestAmount.isEmpty() ? INVALID_AMOUNT : parseCents(highestAmount);
+        if(lowestCents != INVALID_AMOUNT && highestCents != INVALID_AMOUNT) query.amountBetween(lowestCents, highestCents);
+        else if(lowestCents != INVALID_AMOUNT) query.amountAtLeast(lowestCents);
+        else if(highestCents != INVALID_AMOUNT) query.amountAtMost(highestCents);
+    }
+
     /**
      *
      * custom search menu
+     * All conditions go into one query, and the query engine picks the most selective index to start from.
      */
     private static void customSearch(Scanner scanner) {
-        ArrayList<Transaction> filteredList = new ArrayList<>();
+        TransactionQuery query = new TransactionQuery();
         System.out.println("Enter your custom search: ");
         System.out.println("Enter start date(yyyy-MM-dd)(Optional): ");
         System.out.println("Type X to exit");
@@ -351,7 +940,7 @@ public class FinancialTracker {
 
         LocalDate startDateParsed = parseDate(startDate);
         LocalDate endDateParsed = parseDate(endDate);
-        if(startDateParsed != null || endDateParsed != null) filterTransactionsByDate(startDateParsed, endDateParsed, filteredList);
+        query.between(startDateParsed, endDateParsed);
 
         System.out.println("Enter description(Optional): ");
         String description = scanner.nextLine().trim();
@@ -361,17 +950,39 @@ public class FinancialTracker {
         String lowestAmount = scanner.nextLine().trim();
         System.out.println("Enter the highest amount(Optional): ");
         String highestAmount = scanner.nextLine().trim();
-        if(!description.isEmpty()) filterTransactionsByDescription(description, filteredList);
-        if(!vendor.isEmpty()) filterTransactionsByVendor(vendor, filteredList);
-        if(!lowestAmount.isEmpty() || !highestAmount.isEmpty()) filterTransactionsByAmount(lowestAmount, highestAmount, filteredList);
-        if(!filteredList.isEmpty()){
-            for(Transaction t : filteredList){
-                System.out.println(t.toString());
-            }
-        }
-        else{
-            System.out.println("No transactions matched your conditions");
-        }
+        if(!description.isEmpty()) query.description(description);
+        if(!vendor.isEmpty()) query.vendor(vendor);
+        if(!lowestAmount.isEmpty() || !highestAmount.isEmpty()) filterTransactionsByAmount(lowestAmount, highestAmount, query);
+        displayRows(scanner, "No transactions matched your conditions", cachedRows(query, () -> queryEngine.execute(query)));
+    }
+
+    //the rows of a report from the query cache, computed and cached under the same read lock on a miss
+    private static IntList cachedRows(TransactionQuery query, Supplier<IntList> compute){
+        return query(() -> queryCache.rows(transactions, query, compute));
+    }
+
+    //as cachedRows, with the totals of the same rows read under that read lock, so no transaction lands between them
+    private static TotaledRows cachedRows(TransactionQuery query, Supplier<IntList> compute, Supplier<Rollups.Totals> totals){
+        return query(() -> new TotaledRows(queryCache.rows(transactions, query, compute), totals.get()));
+    }
+
+    //runs a report under the read lock and times it, with the rows it found if it lists rows
+    private static <T> T query(Supplier<T> report){
+        Metrics.Timing timing = metrics.start(Metrics.Operation.QUERY);
+        T result = ledger.read(report);
+        if(result instanceof IntList rows) timing.rows(rows.size(), 0);
+        else if(result instanceof TotaledRows totaled) timing.rows(totaled.rows().size(), 0);
+        timing.stop();
+        return result;
+    }
+
+    private static void statistics(){
+        System.out.print(metrics.appendReport(new StringBuilder()));
+        QueryCache.Stats stats = queryCache.stats();
+        System.out.printf("Report cache: {hits: %d, misses: %d, hit rate: %.1f%%, dropped by new transactions: %d,"
+                        + " evicted: %d, reports cached: %d, rows cached: %d}%n",
+                stats.hits(), stats.misses(), stats.hitRate() * 100, stats.invalidations(),
+                stats.evictions(), stats.entries(), stats.rows());
     }
 
     /* ------------------------------------------------------------------
@@ -398,25 +1009,21 @@ public class FinancialTracker {
         }
     }
 
-    private static Double parseDouble(String s) {
-        try {
-            return Math.round(Double.parseDouble(s) * 100.0) / 100.0;
-        }
-        catch(Exception ex){
-            System.err.println("Invalid number");
-            return null;
-        }
+    //amount in cents, or INVALID_AMOUNT
+    private static long parseCents(String s) {
+        long cents = TransactionParser.parseCents(s);
+        if(cents == INVALID_AMOUNT) System.err.println("Invalid number");
+        return cents;
     }
 
     //capitalize the first letter of a word/sentence
-    private static String capitalizeFirst(String text){
+    static String capitalizeFirst(String text){
         if(text.isEmpty()) return text;
         return text.substring(0, 1).toUpperCase() + text.substring(1);
     }
 
-    //sorts all transactions by date
+    //sorts all transactions by date, only needed after a load since inserts keep the index in order
     private static void sortTransactions(){
-        Comparator<Transaction> dateComparator = Comparator.comparing(Transaction::getDate);
-        transactions.sort(dateComparator);
+        dateIndex.rebuild(transactions);
     }
 }
\ No newline at end of file
@@ -0,0 +1,70 @@
+package com.pluralsight;
+
+import java.util.Arrays;
+
+/*
+ * Growable list of primitive ints, used for lists of row ids so they are not boxed.
+ */
+final class IntList {
+    private int[] values;
+    private int size;
+
+    IntList() {
+        this(16);
+    }
+
+    IntList(int capacity) {
+        values = new int[Math.max(capacity, 1)];
+    }
+
+    void add(int value) {
+        if(size == values.length){
+            values = Arrays.copyOf(values, values.length + (values.length >> 1) + 1);
+        }
+        values[size++] = value;
+    }
+
+    //appends every value of other
+    void addAll(IntList other) {
+        if(size + other.size > values.length){
+            values = Arrays.copyOf(values, Math.max(size + other.size, values.length + (values.length >> 1) + 1));
+        }
+        System.arraycopy(other.values, 0, values, size, other.size);
+        size += other.size;
+    }
+
+    int get(int index) {
+        return values[index];
+    }
+
+    void set(int index, int value) {
+        values[index] = value;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    //sorts the values in ascending order and drops repeated ones
+    void sortDistinct() {
+        Arrays.sort(values, 0, size);
+        int distinct = 0;
+        for(int i = 0; i < size; i++){
+            if(distinct == 0 || values[i] != values[distinct - 1]) values[distinct++] = values[i];
+        }
+        size = distinct;
+    }
+
+    //shrinks the list to its first newSize values
+    void truncate(int newSize) {
+        size = newSize;
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
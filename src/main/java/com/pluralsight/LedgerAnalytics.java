@@ -0,0 +1,162 @@
+package com.pluralsight;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Analytics reports over a period of the ledger.
+ * ------------------------------------------------
+ * Each report is one pass over the period's rows in the date index, holding only:
+ *     top vendors          spend per folded vendor id, then through a TopN heap
+ *     largest payments     a TopN heap of n rows
+ *     vendor by month      the top vendors of the year, then one pass adding up their months
+ *     payment sizes        a LogHistogram, fixed size however many payments there are
+ * so memory grows with the number of vendors, never with the number of rows, and nothing is
+ * sorted but the n rows shown. Spend is the size of the payments, deposits are left out.
+ * Periods are epoch days, both included, Integer.MIN_VALUE and MAX_VALUE leave an end open.
+ * The caller holds the read lock.
+ */
+final class LedgerAnalytics {
+
+    /**
+     * What was paid to one vendor, in cents, over how many payments.
+     */
+    record VendorSpend(String vendor, long cents, long payments) {
+    }
+
+    /**
+     * Spend per month of a year for the top vendors, one row per vendor plus a last row
+     * for all other vendors. cents[vendor][month - 1].
+     */
+    record SpendingMatrix(int year, List<String> vendors, long[][] cents) {
+    }
+
+    private final TransactionStore store;
+    private final DateIndex dateIndex;
+
+    LedgerAnalytics(TransactionStore store, DateIndex dateIndex) {
+        this.store = store;
+        this.dateIndex = dateIndex;
+    }
+
+    /**
+     * The n vendors paid the most in the period, most first.
+     */
+    List<VendorSpend> topVendors(int n, int startDay, int endDay) {
+        VendorGroups groups = spendByVendor(startDay, endDay);
+        TopN top = new TopN(n);
+        for(int group = 0; group < groups.names.size(); group++){
+            if(groups.payments[group] > 0) top.offer(groups.cents[group], group);
+        }
+        IntList ranked = top.drainDescending();
+        List<VendorSpend> vendors = new ArrayList<>(ranked.size());
+        for(int i = 0; i < ranked.size(); i++){
+            int group = ranked.get(i);
+            vendors.add(new VendorSpend(groups.names.get(group), groups.cents[group], groups.payments[group]));
+        }
+        return vendors;
+    }
+
+    /**
+     * Row ids of the n largest payments in the period, largest first.
+     */
+    IntList largestPayments(int n, int startDay, int endDay) {
+        TopN top = new TopN(n);
+        int to = to(endDay);
+        for(int position = from(startDay); position < to; position++){
+            int row = dateIndex.rowAt(position);
+            long cents = store.cents(row);
+            if(cents < 0) top.offer(-cents, row);
+        }
+        return top.drainDescending();
+    }
+
+    /**
+     * Spend per month of the year for the given number of top vendors of that year.
+     */
+    SpendingMatrix vendorMonths(int year, int vendors) {
+        int startDay = (int) LocalDate.of(year, 1, 1).toEpochDay();
+        int endDay = (int) LocalDate.of(year, 12, 31).toEpochDay();
+        List<VendorSpend> top = topVendors(vendors, startDay, endDay);
+        //matrix row of every folded vendor id, the last row for the vendors not in the top
+        int[] rowOfVendor = new int[store.vendors().foldedSize()];
+        Arrays.fill(rowOfVendor, top.size());
+        List<String> names = new ArrayList<>(top.size() + 1);
+        for(VendorSpend spend : top){
+            rowOfVendor[store.vendors().findFolded(spend.vendor())] = names.size();
+            names.add(spend.vendor());
+        }
+        long[][] cents = new long[top.size() + 1][12];
+
+        //first day of every month after January, rows come in date order so the month only moves forward
+        int[] monthStarts = new int[13];
+        for(int month = 2; month <= 12; month++){
+            monthStarts[month - 1] = (int) LocalDate.of(year, month, 1).toEpochDay();
+        }
+        monthStarts[12] = Integer.MAX_VALUE;
+        int month = 0;
+        int to = to(endDay);
+        for(int position = from(startDay); position < to; position++){
+            int row = dateIndex.rowAt(position);
+            long amount = store.cents(row);
+            if(amount >= 0) continue;
+            while(store.epochDay(row) >= monthStarts[month + 1]) month++;
+            cents[rowOfVendor[store.foldedVendorId(row)]][month] -= amount;
+        }
+        names.add("All other vendors");
+        return new SpendingMatrix(year, names, cents);
+    }
+
+    /**
+     * Sizes of the payments in the period, in cents.
+     */
+    LogHistogram paymentSizes(int startDay, int endDay) {
+        LogHistogram sizes = new LogHistogram();
+        int to = to(endDay);
+        for(int position = from(startDay); position < to; position++){
+            long cents = store.cents(dateIndex.rowAt(position));
+            if(cents < 0) sizes.record(-cents);
+        }
+        return sizes;
+    }
+
+    //spend and payment count per folded vendor id, with the first spelling in the ledger as the name
+    private static final class VendorGroups {
+        final List<String> names = new ArrayList<>();
+        long[] cents;
+        long[] payments;
+    }
+
+    //one pass adding up by folded vendor id, which needs no hashing per row
+    private VendorGroups spendByVendor(int startDay, int endDay) {
+        StringDictionary vendors = store.vendors();
+        VendorGroups groups = new VendorGroups();
+        groups.cents = new long[vendors.foldedSize()];
+        groups.payments = new long[vendors.foldedSize()];
+        int to = to(endDay);
+        for(int position = from(startDay); position < to; position++){
+            int row = dateIndex.rowAt(position);
+            long cents = store.cents(row);
+            if(cents < 0){
+                int vendor = store.foldedVendorId(row);
+                groups.cents[vendor] -= cents;
+                groups.payments[vendor]++;
+            }
+        }
+        //folded ids are handed out in the order of the ids, so the first id of each is the first spelling
+        for(int id = 0; id < vendors.size(); id++){
+            if(vendors.foldedId(id) == groups.names.size()) groups.names.add(vendors.get(id));
+        }
+        return groups;
+    }
+
+    private int from(int startDay) {
+        return startDay == Integer.MIN_VALUE ? 0 : dateIndex.lowerBound(startDay);
+    }
+
+    private int to(int endDay) {
+        return endDay == Integer.MAX_VALUE ? dateIndex.size() : dateIndex.upperBound(endDay);
+    }
+}
@@ -0,0 +1,169 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/*
+ * Thread-safe access to the ledger.
+ * ------------------------------------------------
+ * Any number of threads can record transactions and run reports, guarded by one read-write lock.
+ *   • Recording writes the journal first, outside the ledger lock, so concurrent writers
+ *     share the journal's group commit. Only the in-memory insert takes the write lock,
+ *     once per batch, and it waits for the reports running at the time to finish.
+ *   • Reports run under the read lock and see no batch half recorded. Rows are never changed
+ *     once added, so a report collects its row ids under the lock and then takes it again for
+ *     each batch of lines it formats. The lines are printed, and the next page asked for, with
+ *     the lock given up, so a writer waits for a query or one batch of formatting, not the console.
+ *   • Compaction waits for the transactions being recorded to finish and holds new ones
+ *     back, so no journaled row can be left out of the rewritten main file. Reports keep running.
+ */
+final class LedgerService {
+
+    /**
+     * A transaction to record. Description and vendor are stored as given.
+     */
+    record NewTransaction(int epochDay, int secondOfDay, long cents, String description, String vendor) {
+    }
+
+    /**
+     * Work that may fail with an IOException, see whileIdle.
+     */
+    interface IoAction {
+        void run() throws IOException;
+    }
+
+    private final TransactionStore store;
+    private final DateIndex dateIndex;
+    private final TextIndex textIndex;
+    private final Rollups rollups;
+    private volatile TransactionJournal journal;
+    private volatile QueryCache queryCache;
+    private volatile Metrics metrics;
+
+    //fair, so a steady stream of writers cannot keep reports waiting
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(true);
+    //held shared while a batch is recorded and exclusively by compaction
+    private final ReentrantReadWriteLock commitLock = new ReentrantReadWriteLock();
+
+    LedgerService(TransactionStore store, DateIndex dateIndex, TextIndex textIndex, Rollups rollups) {
+        this.store = store;
+        this.dateIndex = dateIndex;
+        this.textIndex = textIndex;
+        this.rollups = rollups;
+    }
+
+    //journal that recorded transactions are written to first, null to keep them in memory only
+    void setJournal(TransactionJournal journal) {
+        this.journal = journal;
+    }
+
+    //cached report results to drop when a recorded row matches them, null for none
+    void setQueryCache(QueryCache queryCache) {
+        this.queryCache = queryCache;
+    }
+
+    //where each recorded batch is timed, null to not time them
+    void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Records one transaction and returns its row id. The transaction is in the journal
+     * (and on disk, depending on the fsync policy) before it shows up in any report.
+     */
+    int record(NewTransaction transaction) throws IOException {
+        return recordAll(List.of(transaction));
+    }
+
+    /**
+     * Records a batch with one journal write and one write lock, and returns the row id of
+     * its first transaction. The rows of a batch are consecutive.
+     */
+    int recordAll(List<NewTransaction> batch) throws IOException {
+        Metrics current = metrics;
+        if(current == null) return record(batch, null);
+        Metrics.Timing timing = current.start(Metrics.Operation.RECORD);
+        int first = record(batch, timing);
+        timing.rows(batch.size(), 0).stop();
+        return first;
+    }
+
+    private int record(List<NewTransaction> batch, Metrics.Timing timing) throws IOException {
+        commitLock.readLock().lock();
+        try{
+            TransactionJournal current = journal;
+            if(current != null){
+                StringBuilder lines = new StringBuilder(batch.size() * 64);
+                for(NewTransaction transaction : batch){
+                    TransactionFormat.appendRecord(lines, transaction.epochDay(), transaction.secondOfDay(),
+                            transaction.description(), transaction.vendor(), transaction.cents());
+                }
+                int written = current.appendLines(lines, batch.size());
+                if(timing != null) timing.bytesWritten(written);
+            }
+            lock.writeLock().lock();
+            try{
+                int first = store.size();
+                for(NewTransaction transaction : batch){
+                    int row = store.add(transaction.epochDay(), transaction.secondOfDay(), transaction.cents(),
+                            transaction.description(), transaction.vendor());
+                    textIndex.insert(store, row);
+                    rollups.add(store, row);
+                }
+                dateIndex.insertAll(store, first, batch.size());
+                QueryCache cache = queryCache;
+                if(cache != null) cache.rowsAdded(store, first, batch.size());
+                return first;
+            }
+            finally{
+                lock.writeLock().unlock();
+            }
+        }
+        finally{
+            commitLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs a report under the read lock and returns what it produced.
+     */
+    <T> T read(Supplier<T> report) {
+        lock.readLock().lock();
+        try{
+            return report.get();
+        }
+        finally{
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The read lock itself, for reports that give it up while they wait for the user.
+     */
+    Lock readLock() {
+        return lock.readLock();
+    }
+
+    /**
+     * Runs action once every transaction being recorded is in the store, and holds new ones back
+     * until it is done. Reports keep running. Used to compact the journal.
+     */
+    void whileIdle(IoAction action) throws IOException {
+        commitLock.writeLock().lock();
+        try{
+            lock.readLock().lock();
+            try{
+                action.run();
+            }
+            finally{
+                lock.readLock().unlock();
+            }
+        }
+        finally{
+            commitLock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.pluralsight;
+
+/*
+ * Counts of non-negative longs in logarithmic buckets, for percentiles in fixed memory.
+ * ------------------------------------------------
+ * Values below 128 get a bucket each. Above that every power of two is split into 64
+ * buckets, so a bucket is never wider than 1/64 of its values and a percentile read from
+ * the middle of a bucket is within 1% of the exact one. The whole range of a long fits in
+ * 3,712 buckets, however many values are recorded. Count, sum, min and max are exact.
+ */
+final class LogHistogram {
+    private static final int LINEAR = 128;
+    private static final int SUB_BUCKETS = 64;
+    private static final int BUCKETS = LINEAR + (63 - 7) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    void record(long value) {
+        if(value < 0) throw new IllegalArgumentException("Negative value " + value);
+        counts[bucket(value)]++;
+        count++;
+        sum += value;
+        if(value < min) min = value;
+        if(value > max) max = value;
+    }
+
+    /**
+     * The value that percent of the recorded values are at or below, 0 if nothing was recorded.
+     * Exact for the minimum and maximum and within 1% in between.
+     */
+    long percentile(double percent) {
+        if(count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percent / 100 * count));
+        if(rank >= count) return max;
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++){
+            seen += counts[i];
+            if(seen >= rank) return Math.min(max, Math.max(min, middle(i)));
+        }
+        return max;
+    }
+
+    long count() {
+        return count;
+    }
+
+    long sum() {
+        return sum;
+    }
+
+    long min() {
+        return count == 0 ? 0 : min;
+    }
+
+    long max() {
+        return count == 0 ? 0 : max;
+    }
+
+    long mean() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    private static int bucket(long value) {
+        if(value < LINEAR) return (int) value;
+        //keep the top 7 bits, the first of which is always set
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 6;
+        return LINEAR + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    //middle value of a bucket
+    private static long middle(int bucket) {
+        if(bucket < LINEAR) return bucket;
+        int shift = (bucket - LINEAR) / SUB_BUCKETS + 1;
+        long lowest = (long) ((bucket - LINEAR) % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift >>> 1);
+    }
+}
@@ -0,0 +1,283 @@
+package com.pluralsight;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.EnumMap;
+import java.util.Locale;
+
+/*
+ * Timings and counters for the ledger's operations.
+ * ------------------------------------------------
+ * Every timed operation adds its latency to a LogHistogram, so percentiles stay within 1% in
+ * fixed memory. It also adds the rows it parsed and rejected, the bytes it read and wrote, and
+ * the bytes its thread allocated. Allocation is counted on the calling thread only, so it is
+ * kept to records and saves: loads, imports and column scans do most of their work on other threads.
+ * A timing costs two clock reads, two allocation counter reads and one short lock, so it is
+ * kept to whole operations such as a load, a batch or a report.
+ * Each operation is published three ways:
+ *     JMX      com.pluralsight:type=Metrics,operation=<name>, once register has been called
+ *     JFR      a com.pluralsight.Operation event per timing, when a recording has it enabled.
+ *              No event is made before JFR has started, loading the first event class starts it.
+ *     console  appendReport, shown by Reports > Statistics and on exit with --stats
+ */
+final class Metrics {
+
+    enum Operation {
+        LOAD("load", false), RECORD("record", true), QUERY("query", false), IMPORT("import", false), SAVE("save", true);
+
+        private final String label;
+        //whether all of its work runs on the thread that times it, so that thread's allocation is all of it
+        private final boolean callerThreadOnly;
+
+        Operation(String label, boolean callerThreadOnly) {
+            this.label = label;
+            this.callerThreadOnly = callerThreadOnly;
+        }
+    }
+
+    /**
+     * The totals of one operation, as JMX attributes. Latencies are in milliseconds.
+     * BytesAllocated is -1 for operations that run on other threads.
+     */
+    public interface OperationMXBean {
+        long getCount();
+        long getRows();
+        long getRowsRejected();
+        long getBytesRead();
+        long getBytesWritten();
+        long getBytesAllocated();
+        double getMeanMillis();
+        double getP50Millis();
+        double getP90Millis();
+        double getP99Millis();
+        double getMaxMillis();
+    }
+
+    @Name("com.pluralsight.Operation")
+    @Label("Ledger Operation")
+    @Category("Financial Tracker")
+    @Description("A load, record, query, import or save of the ledger")
+    static final class OperationEvent extends Event {
+        @Label("Operation")
+        String operation;
+        @Label("Rows")
+        long rows;
+        @Label("Rows Rejected")
+        long rowsRejected;
+        @Label("Bytes Read")
+        @DataAmount
+        long bytesRead;
+        @Label("Bytes Written")
+        @DataAmount
+        long bytesWritten;
+        @Label("Bytes Allocated")
+        @Description("Allocated by the calling thread, 0 for loads, queries and imports")
+        @DataAmount
+        long bytesAllocated;
+    }
+
+    /**
+     * One operation being timed. Counts are added while it runs and everything is recorded by stop,
+     * on the thread that started it.
+     */
+    final class Timing {
+        private final Operation operation;
+        private final OperationEvent event;
+        private final long startNanos;
+        private final long startAllocated;
+        private long rows;
+        private long rowsRejected;
+        private long bytesRead;
+        private long bytesWritten;
+
+        private Timing(Operation operation) {
+            this.operation = operation;
+            event = FlightRecorder.isInitialized() ? new OperationEvent() : null;
+            if(event != null) event.begin();
+            startAllocated = operation.callerThreadOnly ? allocatedBytes() : 0;
+            startNanos = System.nanoTime();
+        }
+
+        Timing rows(long rows, long rejected) {
+            this.rows += rows;
+            rowsRejected += rejected;
+            return this;
+        }
+
+        Timing bytesRead(long bytes) {
+            bytesRead += bytes;
+            return this;
+        }
+
+        Timing bytesWritten(long bytes) {
+            bytesWritten += bytes;
+            return this;
+        }
+
+        void stop() {
+            long nanos = System.nanoTime() - startNanos;
+            long allocated = operation.callerThreadOnly ? allocatedBytes() - startAllocated : 0;
+            stats.get(operation).add(this, nanos, allocated);
+            if(event == null) return;
+            event.end();
+            if(event.shouldCommit()){
+                event.operation = operation.label;
+                event.rows = rows;
+                event.rowsRejected = rowsRejected;
+                event.bytesRead = bytesRead;
+                event.bytesWritten = bytesWritten;
+                event.bytesAllocated = allocated;
+                event.commit();
+            }
+        }
+    }
+
+    private static final class OperationStats implements OperationMXBean {
+        private final boolean countsAllocation;
+        private final LogHistogram nanos = new LogHistogram();
+        private long rows;
+        private long rowsRejected;
+        private long bytesRead;
+        private long bytesWritten;
+        private long bytesAllocated;
+
+        OperationStats(boolean countsAllocation) {
+            this.countsAllocation = countsAllocation;
+        }
+
+        synchronized void add(Timing timing, long elapsedNanos, long allocated) {
+            nanos.record(elapsedNanos);
+            rows += timing.rows;
+            rowsRejected += timing.rowsRejected;
+            bytesRead += timing.bytesRead;
+            bytesWritten += timing.bytesWritten;
+            bytesAllocated += allocated;
+        }
+
+        @Override
+        public synchronized long getCount() {
+            return nanos.count();
+        }
+
+        @Override
+        public synchronized long getRows() {
+            return rows;
+        }
+
+        @Override
+        public synchronized long getRowsRejected() {
+            return rowsRejected;
+        }
+
+        @Override
+        public synchronized long getBytesRead() {
+            return bytesRead;
+        }
+
+        @Override
+        public synchronized long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        @Override
+        public synchronized long getBytesAllocated() {
+            return countsAllocation ? bytesAllocated : -1;
+        }
+
+        @Override
+        public synchronized double getMeanMillis() {
+            return nanos.mean() / 1e6;
+        }
+
+        @Override
+        public synchronized double getP50Millis() {
+            return nanos.percentile(50) / 1e6;
+        }
+
+        @Override
+        public synchronized double getP90Millis() {
+            return nanos.percentile(90) / 1e6;
+        }
+
+        @Override
+        public synchronized double getP99Millis() {
+            return nanos.percentile(99) / 1e6;
+        }
+
+        @Override
+        public synchronized double getMaxMillis() {
+            return nanos.max() / 1e6;
+        }
+    }
+
+    private final EnumMap<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+    //null when the JVM cannot count the bytes a thread allocates
+    private final com.sun.management.ThreadMXBean threads;
+
+    Metrics() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        threads = bean instanceof com.sun.management.ThreadMXBean allocation && allocation.isThreadAllocatedMemorySupported()
+                && allocation.isThreadAllocatedMemoryEnabled() ? allocation : null;
+        for(Operation operation : Operation.values()){
+            stats.put(operation, new OperationStats(operation.callerThreadOnly && threads != null));
+        }
+    }
+
+    Timing start(Operation operation) {
+        return new Timing(operation);
+    }
+
+    /**
+     * Publishes every operation on the platform MBean server.
+     */
+    void register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for(Operation operation : Operation.values()){
+            ObjectName name = new ObjectName("com.pluralsight:type=Metrics,operation=" + operation.label);
+            if(!server.isRegistered(name)) server.registerMBean(stats.get(operation), name);
+        }
+    }
+
+    /**
+     * One line per operation that has run: count, rows, bytes and latency percentiles.
+     * Allocation shows "-" where it is not counted.
+     */
+    StringBuilder appendReport(StringBuilder report) {
+        report.append(String.format(Locale.US, "%-8s%8s%12s%10s%12s%12s%14s%10s%10s%10s%10s%n", "Metrics", "count",
+                "rows", "rejected", "read", "written", "allocated", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+        for(Operation operation : Operation.values()){
+            OperationStats operationStats = stats.get(operation);
+            synchronized(operationStats){
+                if(operationStats.getCount() == 0) continue;
+                report.append(String.format(Locale.US, "%-8s%8d%12d%10d%12s%12s%14s%10.3f%10.3f%10.3f%10.3f%n", operation.label,
+                        operationStats.getCount(), operationStats.getRows(), operationStats.getRowsRejected(),
+                        bytes(operationStats.getBytesRead()), bytes(operationStats.getBytesWritten()),
+                        operationStats.getBytesAllocated() < 0 ? "-" : bytes(operationStats.getBytesAllocated()), operationStats.getP50Millis(),
+                        operationStats.getP90Millis(), operationStats.getP99Millis(), operationStats.getMaxMillis()));
+            }
+        }
+        return report;
+    }
+
+    private long allocatedBytes() {
+        return threads == null ? 0 : threads.getCurrentThreadAllocatedBytes();
+    }
+
+    private static String bytes(long bytes) {
+        if(bytes < 1024) return bytes + " B";
+        if(bytes < 1024 * 1024) return String.format(Locale.US, "%.1f KB", bytes / 1024.0);
+        if(bytes < 1024L * 1024 * 1024) return String.format(Locale.US, "%.1f MB", bytes / (1024.0 * 1024));
+        return String.format(Locale.US, "%.2f GB", bytes / (1024.0 * 1024 * 1024));
+    }
+}
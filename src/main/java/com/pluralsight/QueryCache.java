@@ -0,0 +1,136 @@
+package com.pluralsight;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/*
+ * Results of recent report queries, so running the same report again does not walk the ledger.
+ * ------------------------------------------------
+ * Results are keyed on the query with vendor and description folded, so "AMAZON" and "amazon"
+ * share an entry. The least recently used results are dropped once there are more than
+ * maxEntries of them or they hold more than maxRows row ids between them.
+ * Rows never change once added, so a result only goes stale when a new row matches its query.
+ * LedgerService calls rowsAdded under the write lock and exactly those results are dropped.
+ * Results are looked up and filled under the read lock, so no row can be added between
+ * computing a result and caching it.
+ */
+final class QueryCache {
+
+    /**
+     * What the cache has done so far.
+     */
+    record Stats(long hits, long misses, long invalidations, long evictions, int entries, long rows) {
+        double hitRate() {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+    }
+
+    //a query with vendor and description folded, null when not part of the query
+    private record Key(int startDay, int endDay, String vendor, String description,
+                       long lowestCents, long highestCents, boolean absoluteAmount) {
+    }
+
+    private static final class Entry {
+        final IntList rows;
+        //folded dictionary ids of vendor and description, -1 while no row has them yet
+        int vendor = -1;
+        int description = -1;
+
+        Entry(IntList rows) {
+            this.rows = rows;
+        }
+    }
+
+    private final int maxEntries;
+    private final long maxRows;
+    //access order, so iteration starts at the least recently used result
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long rows;
+    private long hits;
+    private long misses;
+    private long invalidations;
+    private long evictions;
+
+    QueryCache(int maxEntries, long maxRows) {
+        this.maxEntries = maxEntries;
+        this.maxRows = maxRows;
+    }
+
+    /**
+     * The cached rows of the query, or the rows compute returns, which are cached.
+     * The caller holds the read lock and must not modify the rows.
+     */
+    IntList rows(TransactionStore store, TransactionQuery query, Supplier<IntList> compute) {
+        Key key = key(query);
+        synchronized(this){
+            Entry entry = entries.get(key);
+            if(entry != null){
+                hits++;
+                return entry.rows;
+            }
+            misses++;
+        }
+        IntList result = compute.get();
+        if(result.size() > maxRows) return result;
+        Entry entry = new Entry(result);
+        if(key.vendor() != null) entry.vendor = store.vendors().findFolded(key.vendor());
+        if(key.description() != null) entry.description = store.descriptions().findFolded(key.description());
+        synchronized(this){
+            Entry previous = entries.put(key, entry);
+            if(previous != null) rows -= previous.rows.size();
+            rows += result.size();
+            for(Iterator<Entry> eldest = entries.values().iterator(); entries.size() > maxEntries || rows > maxRows; ){
+                rows -= eldest.next().rows.size();
+                eldest.remove();
+                evictions++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Drops the results whose query matches any of the rows [first, first + count), which were just
+     * added to the store. Called under the write lock.
+     */
+    synchronized void rowsAdded(TransactionStore store, int first, int count) {
+        if(entries.isEmpty()) return;
+        for(Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator(); iterator.hasNext(); ){
+            Map.Entry<Key, Entry> cached = iterator.next();
+            if(matchesAny(store, cached.getKey(), cached.getValue(), first, count)){
+                rows -= cached.getValue().rows.size();
+                iterator.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    synchronized Stats stats() {
+        return new Stats(hits, misses, invalidations, evictions, entries.size(), rows);
+    }
+
+    private static boolean matchesAny(TransactionStore store, Key key, Entry entry, int first, int count) {
+        //a vendor or description the store did not have when the result was cached may have just been added
+        if(key.vendor() != null && entry.vendor < 0) entry.vendor = store.vendors().findFolded(key.vendor());
+        if(key.description() != null && entry.description < 0) entry.description = store.descriptions().findFolded(key.description());
+        if(key.vendor() != null && entry.vendor < 0) return false;
+        if(key.description() != null && entry.description < 0) return false;
+        for(int row = first; row < first + count; row++){
+            int epochDay = store.epochDay(row);
+            if(epochDay < key.startDay() || epochDay > key.endDay()) continue;
+            if(key.vendor() != null && store.foldedVendorId(row) != entry.vendor) continue;
+            if(key.description() != null && store.foldedDescriptionId(row) != entry.description) continue;
+            long cents = key.absoluteAmount() ? Math.abs(store.cents(row)) : store.cents(row);
+            if(cents >= key.lowestCents() && cents <= key.highestCents()) return true;
+        }
+        return false;
+    }
+
+    private static Key key(TransactionQuery query) {
+        return new Key(query.getStartDay(), query.getEndDay(),
+                query.getVendor() == null ? null : TextIndex.fold(query.getVendor()),
+                query.getDescription() == null ? null : TextIndex.fold(query.getDescription()),
+                query.getLowestCents(), query.getHighestCents(), query.isAbsoluteAmount());
+    }
+}
@@ -0,0 +1,122 @@
+package com.pluralsight;
+
+/*
+ * Runs a TransactionQuery against the store and its indexes.
+ * ------------------------------------------------
+ * The planner asks each index how many rows it would hand back for the query:
+ *     date range      positions between two binary searches in the date index
+ *     vendor          size of the vendor posting list
+ *     description     size of the description posting list
+ * and drives the search from the smallest one. Every other condition is checked
+ * on the driver's rows in the same pass, so no intermediate lists are built.
+ * Vendor and description checks compare the folded dictionary ids of the row with the
+ * query's, which is the same as a case-insensitive string compare but costs an int compare.
+ * When no index applies the query is left to ColumnScan, which reads the columns in bulk
+ * on every core.
+ */
+final class QueryEngine {
+
+    //a query without a vendor or description
+    private static final int ANY = Integer.MIN_VALUE;
+
+    enum Plan {
+        FULL_SCAN, DATE_RANGE, VENDOR_INDEX, DESCRIPTION_INDEX
+    }
+
+    private final TransactionStore store;
+    private final DateIndex dateIndex;
+    private final TextIndex textIndex;
+    private final ColumnScan columnScan;
+
+    QueryEngine(TransactionStore store, DateIndex dateIndex, TextIndex textIndex) {
+        this(store, dateIndex, textIndex, new ColumnScan(store, dateIndex));
+    }
+
+    QueryEngine(TransactionStore store, DateIndex dateIndex, TextIndex textIndex, ColumnScan columnScan) {
+        this.store = store;
+        this.dateIndex = dateIndex;
+        this.textIndex = textIndex;
+        this.columnScan = columnScan;
+    }
+
+    //picks the index that hands back the fewest rows for the query
+    Plan plan(TransactionQuery query) {
+        Plan plan = Plan.FULL_SCAN;
+        long cost = dateIndex.size();
+        if(query.hasDateRange()){
+            long rows = dateTo(query) - dateFrom(query);
+            if(rows < cost){
+                plan = Plan.DATE_RANGE;
+                cost = rows;
+            }
+        }
+        if(query.getVendor() != null){
+            long rows = textIndex.vendorRows(query.getVendor()).size();
+            if(rows < cost){
+                plan = Plan.VENDOR_INDEX;
+                cost = rows;
+            }
+        }
+        if(query.getDescription() != null && textIndex.descriptionRows(query.getDescription()).size() < cost){
+            plan = Plan.DESCRIPTION_INDEX;
+        }
+        return plan;
+    }
+
+    /**
+     * Returns the rows that match every condition of the query, in date order.
+     */
+    IntList execute(TransactionQuery query) {
+        return execute(query, plan(query));
+    }
+
+    IntList execute(TransactionQuery query, Plan plan) {
+        //-1 if no row has the value, which then matches nothing
+        int vendor = query.getVendor() == null ? ANY : store.vendors().findFolded(query.getVendor());
+        int description = query.getDescription() == null ? ANY : store.descriptions().findFolded(query.getDescription());
+        IntList matches = new IntList();
+        switch (plan) {
+            case DATE_RANGE -> {
+                int to = dateTo(query);
+                for(int position = dateFrom(query); position < to; position++){
+                    int row = dateIndex.rowAt(position);
+                    if(matches(query, row, vendor, description)) matches.add(row);
+                }
+                return matches;
+            }
+            case VENDOR_INDEX, DESCRIPTION_INDEX -> {
+                IntList driver = plan == Plan.VENDOR_INDEX ? textIndex.vendorRows(query.getVendor())
+                        : textIndex.descriptionRows(query.getDescription());
+                for(int i = 0; i < driver.size(); i++){
+                    int row = driver.get(i);
+                    if(matches(query, row, vendor, description)) matches.add(row);
+                }
+                return DateIndex.orderByDate(store, matches);
+            }
+            default -> {
+                if(vendor == ANY && description == ANY) return columnScan.scan(query);
+                for(int position = 0; position < dateIndex.size(); position++){
+                    int row = dateIndex.rowAt(position);
+                    if(matches(query, row, vendor, description)) matches.add(row);
+                }
+                return matches;
+            }
+        }
+    }
+
+    private boolean matches(TransactionQuery query, int row, int vendor, int description) {
+        int epochDay = store.epochDay(row);
+        if(epochDay < query.getStartDay() || epochDay > query.getEndDay()) return false;
+        if(vendor != ANY && store.foldedVendorId(row) != vendor) return false;
+        if(description != ANY && store.foldedDescriptionId(row) != description) return false;
+        return query.amountMatches(store.cents(row));
+    }
+
+    private int dateFrom(TransactionQuery query) {
+        return query.getStartDay() == Integer.MIN_VALUE ? 0 : dateIndex.lowerBound(query.getStartDay());
+    }
+
+    private int dateTo(TransactionQuery query) {
+        return query.getEndDay() == Integer.MAX_VALUE ? dateIndex.size() : dateIndex.upperBound(query.getEndDay());
+    }
+}
@@ -0,0 +1,203 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.function.BooleanSupplier;
+
+/*
+ * Renders rows of the store as a report.
+ * ------------------------------------------------
+ * Rows are formatted straight from the columns into one reusable text buffer,
+ * which is encoded into one reusable byte buffer and written out in batches,
+ * so a large listing costs a few big writes instead of a synchronized println per row.
+ * The same path writes the console listing, a CSV file in the transactions file format, or JSON.
+ * write formats and writes in one go. add and writeBuffered split the two, so a caller can format
+ * a batch under the ledger's read lock and write it to a slow console after giving the lock up.
+ */
+final class ReportWriter {
+
+    enum Format {
+        TEXT, CSV, JSON
+    }
+
+    //characters collected before the buffer is written out
+    private static final int BATCH_SIZE = 64 * 1024;
+
+    private final OutputStream out;
+    private final Format format;
+    private final TransactionStore store;
+    private final int pageSize;
+    private final BooleanSupplier nextPage;
+
+    private final StringBuilder text = new StringBuilder(BATCH_SIZE + 1024);
+    private final ByteBuffer bytes = ByteBuffer.allocate(BATCH_SIZE * 2);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private int rows;
+    private boolean stopped;
+
+    /**
+     * @param pageSize rows per page, or 0 to write every row without stopping
+     * @param nextPage asked after each full page, returns false to stop the report
+     */
+    ReportWriter(OutputStream out, Format format, TransactionStore store, int pageSize, BooleanSupplier nextPage) {
+        this.out = out;
+        this.format = format;
+        this.store = store;
+        this.pageSize = pageSize;
+        this.nextPage = nextPage;
+        if(format == Format.JSON) text.append('[');
+    }
+
+    //a report that writes every row
+    ReportWriter(OutputStream out, Format format, TransactionStore store) {
+        this(out, format, store, 0, () -> true);
+    }
+
+    /**
+     * Adds one row to the report. A full page is written out before nextPage is asked.
+     * @return false once the report was stopped, the row is then not written
+     */
+    boolean write(int row) {
+        if(stopped) return false;
+        if(pageSize > 0 && rows > 0 && rows % pageSize == 0){
+            flush();
+            if(!nextPage.getAsBoolean()){
+                stopped = true;
+                return false;
+            }
+        }
+        append(row);
+        if(text.length() >= BATCH_SIZE) flush();
+        return true;
+    }
+
+    /**
+     * Formats one row into the buffer without writing anything out.
+     * @return false once the buffer is full or the page is complete, writeBuffered should be called then
+     */
+    boolean add(int row) {
+        append(row);
+        return text.length() < BATCH_SIZE && (pageSize == 0 || rows % pageSize != 0);
+    }
+
+    /**
+     * Writes out the rows buffered by add. If that completed a page and more rows follow, asks nextPage.
+     * @return false if the report was stopped
+     */
+    boolean writeBuffered(boolean more) {
+        flush();
+        if(more && pageSize > 0 && rows > 0 && rows % pageSize == 0 && !nextPage.getAsBoolean()) stopped = true;
+        return !stopped;
+    }
+
+    //writes everything that is still buffered and ends the report
+    void finish() {
+        if(format == Format.JSON) text.append(rows == 0 ? "]\n" : "\n]\n");
+        flush();
+    }
+
+    //number of rows written so far
+    int rows() {
+        return rows;
+    }
+
+    private void append(int row) {
+        switch (format) {
+            case TEXT -> appendText(row);
+            case CSV -> TransactionFormat.appendRecord(text, store.epochDay(row), store.secondOfDay(row),
+                    store.description(row), store.vendor(row), store.cents(row));
+            case JSON -> appendJson(row);
+        }
+        rows++;
+    }
+
+    /**
+     * Same text as the console listing has always shown:
+     * LocalTime leaves out zero seconds and the amount is shown with appendAmount.
+     */
+    private void appendText(int row) {
+        text.append("Transaction: {date: ");
+        TransactionFormat.appendDate(text, store.epochDay(row));
+        text.append(", time: ");
+        int secondOfDay = store.secondOfDay(row);
+        TransactionFormat.appendTime(text, secondOfDay);
+        if(secondOfDay % 60 == 0) text.setLength(text.length() - 3);
+        text.append(", description: ").append(store.description(row));
+        text.append(", vendor: ").append(store.vendor(row));
+        TransactionFormat.appendAmount(text.append(", amount: "), store.cents(row));
+        text.append("}\n\n");
+    }
+
+    private void appendJson(int row) {
+        text.append(rows == 0 ? "\n" : ",\n");
+        text.append("  {\"date\": \"");
+        TransactionFormat.appendDate(text, store.epochDay(row));
+        text.append("\", \"time\": \"");
+        TransactionFormat.appendTime(text, store.secondOfDay(row));
+        text.append("\", \"description\": ");
+        appendJsonString(store.description(row));
+        text.append(", \"vendor\": ");
+        appendJsonString(store.vendor(row));
+        text.append(", \"amount\": ");
+        TransactionFormat.appendCents(text, store.cents(row));
+        text.append('}');
+    }
+
+    private void appendJsonString(String value) {
+        text.append('"');
+        for(int i = 0; i < value.length(); i++){
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> text.append("\\\"");
+                case '\\' -> text.append("\\\\");
+                case '\n' -> text.append("\\n");
+                case '\r' -> text.append("\\r");
+                case '\t' -> text.append("\\t");
+                default -> {
+                    if(c < 0x20) text.append(String.format("\\u%04x", (int) c));
+                    else text.append(c);
+                }
+            }
+        }
+        text.append('"');
+    }
+
+    //encodes the text buffer into the byte buffer and writes it out, both are reused
+    private void flush() {
+        try{
+            CharBuffer chars = CharBuffer.wrap(text);
+            CoderResult result;
+            do{
+                result = encoder.encode(chars, bytes, true);
+                if(result.isOverflow()) drain();
+            } while(result.isOverflow());
+            do{
+                result = encoder.flush(bytes);
+                if(result.isOverflow()) drain();
+            } while(result.isOverflow());
+            drain();
+            out.flush();
+        }
+        catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+        finally{
+            encoder.reset();
+            text.setLength(0);
+        }
+    }
+
+    private void drain() throws IOException {
+        out.write(bytes.array(), 0, bytes.position());
+        bytes.clear();
+    }
+}
@@ -0,0 +1,276 @@
+package com.pluralsight;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Running totals of the ledger.
+ * ------------------------------------------------
+ * Count, deposit sum, payment sum and net in exact cents are kept for every day, month,
+ * year and vendor (ignoring case), plus one total for the whole ledger.
+ * They are built once after loading and updated with every recorded transaction, so a
+ * period summary adds up a few rollups instead of walking its rows.
+ *
+ * The rollups are saved next to the main file and, like the journal header, remember the
+ * size and last modified time of the main file they were built from. A saved file that
+ * does not match is ignored and the rollups are rebuilt.
+ */
+final class Rollups {
+    private static final int VERSION = 1;
+
+    private final HashMap<Integer, Totals> days = new HashMap<>();
+    private final HashMap<Integer, Totals> months = new HashMap<>();
+    private final HashMap<Integer, Totals> years = new HashMap<>();
+    private final HashMap<String, Totals> vendors = new HashMap<>();
+    private final Totals total = new Totals();
+
+    //vendor totals per dictionary id, so adding a row does not fold the vendor again
+    private final ArrayList<Totals> vendorsById = new ArrayList<>();
+
+    /**
+     * Count, deposits, payments and net of a group of transactions, in cents.
+     * Payments are negative, so net is deposits + payments.
+     */
+    static final class Totals {
+        private long count;
+        private long deposits;
+        private long payments;
+
+        private void add(long cents) {
+            count++;
+            if(cents > 0) deposits += cents;
+            else payments += cents;
+        }
+
+        private void add(long count, long deposits, long payments) {
+            this.count += count;
+            this.deposits += deposits;
+            this.payments += payments;
+        }
+
+        private void add(Totals other) {
+            if(other != null) add(other.count, other.deposits, other.payments);
+        }
+
+        long count() {
+            return count;
+        }
+
+        long deposits() {
+            return deposits;
+        }
+
+        long payments() {
+            return payments;
+        }
+
+        long net() {
+            return deposits + payments;
+        }
+    }
+
+    /**
+     * Adds a row that was just appended to the store.
+     */
+    void add(TransactionStore store, int row) {
+        int epochDay = store.epochDay(row);
+        long cents = store.cents(row);
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        days.computeIfAbsent(epochDay, key -> new Totals()).add(cents);
+        months.computeIfAbsent(monthKey(date), key -> new Totals()).add(cents);
+        years.computeIfAbsent(date.getYear(), key -> new Totals()).add(cents);
+        vendorTotals(store, store.vendorId(row)).add(cents);
+        total.add(cents);
+    }
+
+    /**
+     * Rebuilds the rollups from the rows [0, rows) of the store.
+     * Rows on the same day usually follow each other in the file, so a run of them
+     * is added to the day with one map lookup, and months and years are added up
+     * from the days instead of from the rows.
+     */
+    void rebuild(TransactionStore store, int rows) {
+        clear();
+        int vendorCount = store.vendors().size();
+        long[] vendorCounts = new long[vendorCount];
+        long[] vendorDeposits = new long[vendorCount];
+        long[] vendorPayments = new long[vendorCount];
+        Totals day = null;
+        int currentDay = 0;
+        for(int row = 0; row < rows; row++){
+            int epochDay = store.epochDay(row);
+            if(day == null || epochDay != currentDay){
+                currentDay = epochDay;
+                day = days.computeIfAbsent(epochDay, key -> new Totals());
+            }
+            long cents = store.cents(row);
+            day.add(cents);
+            int vendorId = store.vendorId(row);
+            vendorCounts[vendorId]++;
+            if(cents > 0) vendorDeposits[vendorId] += cents;
+            else vendorPayments[vendorId] += cents;
+        }
+        for(Map.Entry<Integer, Totals> entry : days.entrySet()){
+            LocalDate date = LocalDate.ofEpochDay(entry.getKey());
+            Totals totals = entry.getValue();
+            months.computeIfAbsent(monthKey(date), key -> new Totals()).add(totals);
+            years.computeIfAbsent(date.getYear(), key -> new Totals()).add(totals);
+            total.add(totals);
+        }
+        for(int vendorId = 0; vendorId < vendorCount; vendorId++){
+            if(vendorCounts[vendorId] == 0) continue;
+            vendorTotals(store, vendorId).add(vendorCounts[vendorId], vendorDeposits[vendorId], vendorPayments[vendorId]);
+        }
+    }
+
+    private void clear() {
+        days.clear();
+        months.clear();
+        years.clear();
+        vendors.clear();
+        vendorsById.clear();
+        total.count = 0;
+        total.deposits = 0;
+        total.payments = 0;
+    }
+
+    private Totals vendorTotals(TransactionStore store, int vendorId) {
+        while(vendorsById.size() <= vendorId){
+            String vendor = store.vendors().get(vendorsById.size());
+            vendorsById.add(vendors.computeIfAbsent(TextIndex.fold(vendor), key -> new Totals()));
+        }
+        return vendorsById.get(vendorId);
+    }
+
+    private static int monthKey(LocalDate date) {
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+
+    /**
+     * Totals of the transactions from start to end, both days included.
+     * The range is covered by whole years where it can, then whole months, then single days,
+     * so a year to date costs at most 11 months and 30 days.
+     */
+    Totals between(LocalDate start, LocalDate end) {
+        Totals sum = new Totals();
+        LocalDate date = start;
+        while(!date.isAfter(end)){
+            LocalDate nextYear = date.plusYears(1);
+            LocalDate nextMonth = date.plusMonths(1);
+            if(date.getDayOfYear() == 1 && !nextYear.minusDays(1).isAfter(end)){
+                sum.add(years.get(date.getYear()));
+                date = nextYear;
+            }
+            else if(date.getDayOfMonth() == 1 && !nextMonth.minusDays(1).isAfter(end)){
+                sum.add(months.get(monthKey(date)));
+                date = nextMonth;
+            }
+            else{
+                sum.add(days.get((int) date.toEpochDay()));
+                date = date.plusDays(1);
+            }
+        }
+        return sum;
+    }
+
+    //totals of one vendor, ignoring case
+    Totals vendor(String vendor) {
+        Totals sum = new Totals();
+        sum.add(vendors.get(TextIndex.fold(vendor)));
+        return sum;
+    }
+
+    //totals of the whole ledger, its net is the balance
+    Totals total() {
+        Totals sum = new Totals();
+        sum.add(total);
+        return sum;
+    }
+
+    /**
+     * Saves the rollups for mainFile, which must hold exactly the rows they were built from.
+     * The file is written next to it and moved into place, so a crash leaves the old file or the new one.
+     */
+    void save(Path file, Path mainFile) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try(FileOutputStream stream = new FileOutputStream(temp.toFile());
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16))){
+            output.writeInt(VERSION);
+            output.writeLong(Files.size(mainFile));
+            output.writeLong(Files.getLastModifiedTime(mainFile).toMillis());
+            writeTotals(output, total);
+            writePeriods(output, days);
+            writePeriods(output, months);
+            writePeriods(output, years);
+            output.writeInt(vendors.size());
+            for(Map.Entry<String, Totals> entry : vendors.entrySet()){
+                output.writeUTF(entry.getKey());
+                writeTotals(output, entry.getValue());
+            }
+            output.flush();
+            stream.getChannel().force(true);
+        }
+        TransactionJournal.moveIntoPlace(temp, file);
+    }
+
+    /**
+     * Replaces the rollups with the ones saved for mainFile.
+     * @return false if there is no saved file or it belongs to another version of mainFile
+     */
+    boolean load(Path file, Path mainFile) throws IOException {
+        try(DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))){
+            if(input.readInt() != VERSION
+                    || input.readLong() != Files.size(mainFile)
+                    || input.readLong() != Files.getLastModifiedTime(mainFile).toMillis()) return false;
+            clear();
+            readTotals(input, total);
+            readPeriods(input, days);
+            readPeriods(input, months);
+            readPeriods(input, years);
+            int vendorCount = input.readInt();
+            for(int i = 0; i < vendorCount; i++){
+                readTotals(input, vendors.computeIfAbsent(input.readUTF(), key -> new Totals()));
+            }
+            return true;
+        }
+        catch(NoSuchFileException e){
+            return false;
+        }
+    }
+
+    private static void writePeriods(DataOutputStream output, HashMap<Integer, Totals> periods) throws IOException {
+        output.writeInt(periods.size());
+        for(Map.Entry<Integer, Totals> entry : periods.entrySet()){
+            output.writeInt(entry.getKey());
+            writeTotals(output, entry.getValue());
+        }
+    }
+
+    private static void readPeriods(DataInputStream input, HashMap<Integer, Totals> periods) throws IOException {
+        int count = input.readInt();
+        for(int i = 0; i < count; i++){
+            readTotals(input, periods.computeIfAbsent(input.readInt(), key -> new Totals()));
+        }
+    }
+
+    private static void writeTotals(DataOutputStream output, Totals totals) throws IOException {
+        output.writeLong(totals.count);
+        output.writeLong(totals.deposits);
+        output.writeLong(totals.payments);
+    }
+
+    private static void readTotals(DataInputStream input, Totals totals) throws IOException {
+        totals.add(input.readLong(), input.readLong(), input.readLong());
+    }
+}
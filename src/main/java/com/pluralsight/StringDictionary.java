@@ -0,0 +1,172 @@
+package com.pluralsight;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/*
+ * Maps each distinct string to a small int id, so a column only has to keep the id.
+ * Ids are handed out in the order the strings are first seen, starting at 0.
+ * ------------------------------------------------
+ * Every id also has a folded id, shared by all values that are equal ignoring case,
+ * so case-insensitive equality of two rows is an int compare.
+ * Values can be looked up by their UTF-8 bytes straight from a file buffer, so a value
+ * that was seen before costs a hash of its bytes and no String.
+ * Only the UTF-8 bytes of a value are kept, get decodes a new String on every call, so code that
+ * looks values up per row should decode them once with values(). The folded ids still key one
+ * lower case String per group of values that are equal ignoring case.
+ */
+final class StringDictionary {
+    private static final byte[] NO_SCRATCH = new byte[0];
+
+    private final HashMap<String, Integer> foldedIds = new HashMap<>();
+    private int[] foldedIdById = new int[16];
+
+    //open addressing over the UTF-8 bytes of each value, slots hold id + 1 and 0 is empty
+    private final ArrayList<byte[]> bytesById = new ArrayList<>();
+    private int[] slots = new int[64];
+    private int[] slotHashes = new int[64];
+
+    //returns the id of value, adding it if it has not been seen before
+    int intern(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(bytes, 0, bytes.length);
+        int id = find(bytes, hash);
+        if(id < 0){
+            id = bytesById.size();
+            bytesById.add(bytes);
+            if(id == foldedIdById.length) foldedIdById = Arrays.copyOf(foldedIdById, id * 2);
+            foldedIdById[id] = foldedIds.computeIfAbsent(TextIndex.fold(value), key -> foldedIds.size());
+            addSlot(hash, id);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the id of the UTF-8 text in [start, end) of the buffer with its first letter capitalized,
+     * the value TransactionParser.decodeCapitalized would give, adding it if it has not been seen before.
+     * Only a value seen for the first time is decoded into a String.
+     */
+    int intern(ByteBuffer buffer, int start, int end) {
+        //a non-ASCII first letter needs the full capitalization rules
+        if(end > start && buffer.get(start) < 0) return intern(TransactionParser.decodeCapitalized(buffer, start, end, NO_SCRATCH));
+        int hash = hashCapitalized(buffer, start, end);
+        int mask = slots.length - 1;
+        for(int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask){
+            if(slotHashes[slot] == hash && equalsCapitalized(bytesById.get(slots[slot] - 1), buffer, start, end)) return slots[slot] - 1;
+        }
+        return intern(TransactionParser.decodeCapitalized(buffer, start, end, NO_SCRATCH));
+    }
+
+    //returns the id of value, or -1 if it is not in the dictionary
+    int find(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return find(bytes, hash(bytes, 0, bytes.length));
+    }
+
+    //the folded id of values equal to value ignoring case, or -1 if there are none
+    int findFolded(String value) {
+        Integer folded = foldedIds.get(TextIndex.fold(value));
+        return folded == null ? -1 : folded;
+    }
+
+    //the id shared by every value that is equal to this id's value ignoring case
+    int foldedId(int id) {
+        return foldedIdById[id];
+    }
+
+    //number of distinct values ignoring case, folded ids are below this
+    int foldedSize() {
+        return foldedIds.size();
+    }
+
+    //decodes a new String each call
+    String get(int id) {
+        return new String(bytesById.get(id), StandardCharsets.UTF_8);
+    }
+
+    //every value decoded once, indexed by id
+    String[] values() {
+        String[] values = new String[size()];
+        for(int id = 0; id < values.length; id++){
+            values[id] = get(id);
+        }
+        return values;
+    }
+
+    //the UTF-8 bytes of the value, owned by the dictionary so the caller must not change them
+    byte[] bytes(int id) {
+        return bytesById.get(id);
+    }
+
+    int size() {
+        return bytesById.size();
+    }
+
+    private int find(byte[] bytes, int hash) {
+        int mask = slots.length - 1;
+        for(int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask){
+            if(slotHashes[slot] == hash && Arrays.equals(bytesById.get(slots[slot] - 1), bytes)) return slots[slot] - 1;
+        }
+        return -1;
+    }
+
+    private void addSlot(int hash, int id) {
+        if(bytesById.size() * 2 > slots.length){
+            int[] oldSlots = slots;
+            int[] oldHashes = slotHashes;
+            slots = new int[oldSlots.length * 2];
+            slotHashes = new int[oldSlots.length * 2];
+            for(int i = 0; i < oldSlots.length; i++){
+                if(oldSlots[i] != 0) putSlot(oldHashes[i], oldSlots[i] - 1);
+            }
+        }
+        putSlot(hash, id);
+    }
+
+    private void putSlot(int hash, int id) {
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while(slots[slot] != 0){
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = id + 1;
+        slotHashes[slot] = hash;
+    }
+
+    private static int hash(byte[] bytes, int start, int end) {
+        int hash = 1;
+        for(int i = start; i < end; i++){
+            hash = 31 * hash + bytes[i];
+        }
+        return spread(hash);
+    }
+
+    //the hash of the bytes with an ASCII lower case first letter taken as upper case
+    private static int hashCapitalized(ByteBuffer buffer, int start, int end) {
+        int hash = 1;
+        for(int i = start; i < end; i++){
+            hash = 31 * hash + (i == start ? capitalize(buffer.get(i)) : buffer.get(i));
+        }
+        return spread(hash);
+    }
+
+    private static boolean equalsCapitalized(byte[] value, ByteBuffer buffer, int start, int end) {
+        if(value.length != end - start) return false;
+        for(int i = 0; i < value.length; i++){
+            byte b = buffer.get(start + i);
+            if(value[i] != (i == 0 ? capitalize(b) : b)) return false;
+        }
+        return true;
+    }
+
+    private static byte capitalize(byte b) {
+        return b >= 'a' && b <= 'z' ? (byte) (b - ('a' - 'A')) : b;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
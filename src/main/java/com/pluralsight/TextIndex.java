@@ -0,0 +1,147 @@
+package com.pluralsight;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+
+/*
+ * Case-insensitive lookups by vendor and description.
+ * ------------------------------------------------
+ * Vendors and descriptions are folded to lower case and map to a posting list:
+ * the row ids that have that value, in row id order. Descriptions are also split
+ * into words, and each word maps to the rows whose description contains it, so
+ * keyword searches never scan the ledger.
+ * Posting lists are shared with the index and must not be modified by callers.
+ */
+final class TextIndex {
+    private static final IntList EMPTY = new IntList(1);
+
+    private final HashMap<String, IntList> vendors = new HashMap<>();
+    private final HashMap<String, IntList> descriptions = new HashMap<>();
+    private final TreeMap<String, IntList> words = new TreeMap<>();
+
+    //posting lists per dictionary id, so inserting a row does not fold or split any strings
+    private final ArrayList<IntList> vendorsById = new ArrayList<>();
+    private final ArrayList<IntList> descriptionsById = new ArrayList<>();
+    private final ArrayList<IntList[]> wordsById = new ArrayList<>();
+
+    /**
+     * Adds a row that was just appended to the store.
+     */
+    void insert(TransactionStore store, int row) {
+        int vendorId = store.vendorId(row);
+        while(vendorsById.size() <= vendorId){
+            String vendor = store.vendors().get(vendorsById.size());
+            vendorsById.add(vendors.computeIfAbsent(fold(vendor), key -> new IntList()));
+        }
+        vendorsById.get(vendorId).add(row);
+
+        int descriptionId = store.descriptionId(row);
+        while(descriptionsById.size() <= descriptionId){
+            String description = store.descriptions().get(descriptionsById.size());
+            descriptionsById.add(descriptions.computeIfAbsent(fold(description), key -> new IntList()));
+            List<String> tokens = tokenize(description);
+            IntList[] postings = new IntList[tokens.size()];
+            for(int i = 0; i < postings.length; i++){
+                postings[i] = words.computeIfAbsent(tokens.get(i), key -> new IntList());
+            }
+            wordsById.add(postings);
+        }
+        descriptionsById.get(descriptionId).add(row);
+        for(IntList postings : wordsById.get(descriptionId)){
+            postings.add(row);
+        }
+    }
+
+    //indexes every row of the store, used once after loading
+    void rebuild(TransactionStore store) {
+        vendors.clear();
+        descriptions.clear();
+        words.clear();
+        vendorsById.clear();
+        descriptionsById.clear();
+        wordsById.clear();
+        for(int row = 0; row < store.size(); row++){
+            insert(store, row);
+        }
+    }
+
+    //rows whose vendor equals vendor, ignoring case
+    IntList vendorRows(String vendor) {
+        return vendors.getOrDefault(fold(vendor), EMPTY);
+    }
+
+    //rows whose description equals description, ignoring case
+    IntList descriptionRows(String description) {
+        return descriptions.getOrDefault(fold(description), EMPTY);
+    }
+
+    /**
+     * Rows whose description has a word starting with each word of the search text,
+     * e.g. "cour sub" finds "Online course subscription".
+     */
+    IntList keywordRows(String text) {
+        List<String> tokens = tokenize(text);
+        if(tokens.isEmpty()) return new IntList();
+        IntList result = null;
+        for(String token : tokens){
+            //a short prefix can match many words, so their rows are gathered and sorted once instead of merged pairwise
+            Collection<IntList> matching = words.subMap(token, true, token + Character.MAX_VALUE, false).values();
+            int total = 0;
+            for(IntList postings : matching){
+                total += postings.size();
+            }
+            IntList matches = new IntList(total);
+            for(IntList postings : matching){
+                matches.addAll(postings);
+            }
+            if(matching.size() > 1) matches.sortDistinct();
+            result = result == null ? matches : intersect(result, matches);
+            if(result.isEmpty()) break;
+        }
+        return result;
+    }
+
+    //rows in both lists, which are in ascending order
+    static IntList intersect(IntList first, IntList second) {
+        IntList result = new IntList(Math.min(first.size(), second.size()));
+        int i = 0;
+        int j = 0;
+        while(i < first.size() && j < second.size()){
+            int a = first.get(i);
+            int b = second.get(j);
+            if(a < b) i++;
+            else if(b < a) j++;
+            else{
+                result.add(a);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    static String fold(String text) {
+        return text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    //distinct lower case words made of letters and digits
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        String folded = fold(text);
+        int start = -1;
+        for(int i = 0; i <= folded.length(); i++){
+            boolean wordChar = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if(wordChar && start < 0) start = i;
+            else if(!wordChar && start >= 0){
+                String token = folded.substring(start, i);
+                if(!tokens.contains(token)) tokens.add(token);
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,67 @@
+package com.pluralsight;
+
+/*
+ * The n largest keys offered so far, each with an int value such as a row id.
+ * A min-heap of n primitive pairs: the smallest key kept is at the root, so a key that
+ * does not make the cut costs one compare and a million offers never hold more than n.
+ * On equal keys the one offered first is kept.
+ */
+final class TopN {
+    private final long[] keys;
+    private final int[] values;
+    private int size;
+
+    TopN(int n) {
+        keys = new long[Math.max(n, 0)];
+        values = new int[Math.max(n, 0)];
+    }
+
+    void offer(long key, int value) {
+        if(size < keys.length){
+            int i = size++;
+            while(i > 0 && keys[(i - 1) >>> 1] > key){
+                int parent = (i - 1) >>> 1;
+                keys[i] = keys[parent];
+                values[i] = values[parent];
+                i = parent;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+        else if(size > 0 && key > keys[0]){
+            siftDown(key, value, size);
+        }
+    }
+
+    /**
+     * The values kept, largest key first. Empties the heap.
+     */
+    IntList drainDescending() {
+        IntList sorted = new IntList(size);
+        for(int i = 0; i < size; i++){
+            sorted.add(0);
+        }
+        for(int last = size - 1; last >= 0; last--){
+            sorted.set(last, values[0]);
+            siftDown(keys[last], values[last], last);
+        }
+        size = 0;
+        return sorted;
+    }
+
+    //puts key and value at the root of a heap of the given size and moves them down to their place
+    private void siftDown(long key, int value, int heapSize) {
+        int i = 0;
+        while(true){
+            int child = 2 * i + 1;
+            if(child >= heapSize) break;
+            if(child + 1 < heapSize && keys[child + 1] < keys[child]) child++;
+            if(keys[child] >= key) break;
+            keys[i] = keys[child];
+            values[i] = values[child];
+            i = child;
+        }
+        keys[i] = key;
+        values[i] = value;
+    }
+}
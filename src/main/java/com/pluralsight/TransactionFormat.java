@@ -0,0 +1,78 @@
+package com.pluralsight;
+
+/*
+ * Writes transactions back out in the file format
+ *     yyyy-MM-dd|HH:mm:ss|description|vendor|amount
+ * straight from the column values, without building LocalDate/LocalTime objects.
+ * The amount always has two decimals, e.g. -89.50.
+ */
+final class TransactionFormat {
+
+    private TransactionFormat() {
+    }
+
+    //appends one record followed by a line break
+    static StringBuilder appendRecord(StringBuilder out, int epochDay, int secondOfDay, String description, String vendor, long cents) {
+        appendDate(out, epochDay).append('|');
+        appendTime(out, secondOfDay).append('|');
+        out.append(description).append('|');
+        out.append(vendor).append('|');
+        return appendCents(out, cents).append('\n');
+    }
+
+    /**
+     * Appends an epoch day as yyyy-MM-dd. This is the inverse of the arithmetic in
+     * TransactionParser.parseDate, so only years 0-9999 are expected.
+     */
+    static StringBuilder appendDate(StringBuilder out, int epochDay) {
+        //days counted from 0000-03-01 so the leap day is the last day of the year
+        long zeroDay = epochDay + 719528L - 60;
+        long era = Math.floorDiv(zeroDay, 146097);
+        long dayOfEra = zeroDay - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long marchMonth = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * marchMonth + 2) / 5 + 1);
+        int month = (int) (marchMonth < 10 ? marchMonth + 3 : marchMonth - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        appendPadded(out, year, 4).append('-');
+        appendPadded(out, month, 2).append('-');
+        return appendPadded(out, day, 2);
+    }
+
+    //appends a second of the day as HH:mm:ss
+    static StringBuilder appendTime(StringBuilder out, int secondOfDay) {
+        appendPadded(out, secondOfDay / 3600, 2).append(':');
+        appendPadded(out, secondOfDay / 60 % 60, 2).append(':');
+        return appendPadded(out, secondOfDay % 60, 2);
+    }
+
+    //appends cents as a decimal amount with two decimals
+    static StringBuilder appendCents(StringBuilder out, long cents) {
+        if(cents < 0) out.append('-');
+        long abs = Math.abs(cents);
+        out.append(abs / 100).append('.');
+        return appendPadded(out, abs % 100, 2);
+    }
+
+    /**
+     * Appends cents the way the console has always shown amounts: at least one decimal and no
+     * trailing zero after it, so -89.50 shows as -89.5 and 12.00 as 12.0.
+     * Unlike printing a double it stays exact and never switches to 1.0E7 for large amounts.
+     */
+    static StringBuilder appendAmount(StringBuilder out, long cents) {
+        if(cents < 0) out.append('-');
+        long abs = Math.abs(cents);
+        out.append(abs / 100).append('.');
+        long fraction = abs % 100;
+        if(fraction % 10 == 0) return out.append(fraction / 10);
+        return appendPadded(out, fraction, 2);
+    }
+
+    private static StringBuilder appendPadded(StringBuilder out, long value, int width) {
+        for(long limit = 10; width > 1; width--, limit *= 10){
+            if(value < limit) out.append('0');
+        }
+        return out.append(value);
+    }
+}
@@ -0,0 +1,326 @@
+package com.pluralsight;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Append-only journal for new transactions.
+ * ------------------------------------------------
+ * Every recorded transaction is appended to the journal in the same pipe-delimited
+ * format as the main file, so nothing is lost if the process dies before exit.
+ * Compaction rewrites the main file from the store and starts a new, empty journal.
+ *
+ * The first line of the journal names the main file it applies to:
+ *     #journal <size of main file> <last modified millis of main file>
+ * Compaction replaces the main file first and the journal second. If it stops in
+ * between, the header no longer matches the main file, which already holds the
+ * journal records, so the journal is set aside instead of being replayed twice.
+ */
+final class TransactionJournal implements Closeable {
+
+    /**
+     * When appended records are forced to disk.
+     * ALWAYS   every append is on disk when it returns; appends that arrive together share one fsync.
+     * INTERVAL appends are written to the OS right away and forced by sync(), e.g. from a timer.
+     * NEVER    appends are written to the OS and forcing them is left to the OS.
+     */
+    enum FsyncPolicy {
+        ALWAYS, INTERVAL, NEVER
+    }
+
+    private static final String HEADER_PREFIX = "#journal ";
+
+    private final Path mainFile;
+    private final Path journalFile;
+    private final FsyncPolicy policy;
+    private volatile FileChannel channel;
+
+    //group commit state, guarded by lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition written = lock.newCondition();
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer spare = ByteBuffer.allocate(64 * 1024);
+    private long appendedCount;
+    private long writtenCount;
+    private boolean writing;
+    private IOException failure;
+    private long records;
+
+    private TransactionJournal(Path mainFile, Path journalFile, FsyncPolicy policy) {
+        this.mainFile = mainFile;
+        this.journalFile = journalFile;
+        this.policy = policy;
+    }
+
+    /**
+     * Opens the journal for mainFile and replays its records into store.
+     * A missing journal is created, and a journal that belongs to an older main file
+     * is renamed to *.stale and replaced by an empty one. A last line cut off by a crash
+     * is cut from the file too, so the next append starts on a line of its own.
+     * @param malformed receives journal lines that could not be parsed
+     */
+    static TransactionJournal open(Path mainFile, Path journalFile, FsyncPolicy policy, TransactionStore store,
+                                   List<TransactionParser.MalformedLine> malformed) throws IOException {
+        TransactionJournal journal = new TransactionJournal(mainFile, journalFile, policy);
+        if(Files.exists(journalFile)){
+            long end = journal.replay(store, malformed);
+            if(end >= 0){
+                journal.channel = FileChannel.open(journalFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                if(journal.channel.size() > end){
+                    journal.channel.truncate(end);
+                    journal.channel.force(true);
+                }
+                return journal;
+            }
+            Path stale = journalFile.resolveSibling(journalFile.getFileName() + ".stale");
+            Files.move(journalFile, stale, StandardCopyOption.REPLACE_EXISTING);
+            System.err.println("Journal does not match " + mainFile.getFileName() + ", moved it to " + stale.getFileName());
+        }
+        journal.reset();
+        return journal;
+    }
+
+    /**
+     * Adds the records of the journal to store.
+     * A last line without a line break was cut off by a crash and is dropped.
+     * @return the offset just past the last whole line, or -1 if the header does not belong to the current main file
+     */
+    private long replay(TransactionStore store, List<TransactionParser.MalformedLine> malformed) throws IOException {
+        try(FileChannel input = FileChannel.open(journalFile, StandardOpenOption.READ)){
+            if(input.size() > Integer.MAX_VALUE) throw new IOException("Journal is too large to replay");
+            MappedByteBuffer buffer = input.map(FileChannel.MapMode.READ_ONLY, 0, input.size());
+            int headerEnd = 0;
+            while(headerEnd < buffer.limit() && buffer.get(headerEnd) != '\n'){
+                headerEnd++;
+            }
+            byte[] header = new byte[headerEnd];
+            buffer.get(0, header);
+            if(headerEnd == buffer.limit() || !new String(header, StandardCharsets.UTF_8).equals(header())) return -1;
+
+            int end = buffer.limit();
+            while(end > headerEnd + 1 && buffer.get(end - 1) != '\n'){
+                end--;
+            }
+            List<TransactionParser.MalformedLine> errors = new ArrayList<>();
+            TransactionParser.parseLines(buffer, headerEnd + 1, end,
+                    (epochDay, secondOfDay, line, descriptionStart, descriptionEnd, vendorStart, vendorEnd, cents) -> {
+                        store.add(epochDay, secondOfDay, cents, line, descriptionStart, descriptionEnd, vendorStart, vendorEnd);
+                        records++;
+                    },
+                    errors);
+            //journal line numbers count the header line too
+            for(TransactionParser.MalformedLine line : errors){
+                malformed.add(new TransactionParser.MalformedLine(line.lineNumber() + 1, line.reason()));
+            }
+            return end;
+        }
+    }
+
+    /**
+     * Appends one transaction. With FsyncPolicy.ALWAYS the record is on disk when this returns.
+     */
+    void append(int epochDay, int secondOfDay, long cents, String description, String vendor) throws IOException {
+        appendLines(TransactionFormat.appendRecord(new StringBuilder(64), epochDay, secondOfDay, description, vendor, cents), 1);
+    }
+
+    /**
+     * Appends count records that are already in the file format, each ending with a line break,
+     * as one batch, and returns the number of bytes appended. With FsyncPolicy.ALWAYS they are
+     * on disk when this returns.
+     */
+    int appendLines(CharSequence lines, int count) throws IOException {
+        byte[] record = lines.toString().getBytes(StandardCharsets.UTF_8);
+        long sequence;
+        lock.lock();
+        try{
+            if(failure != null) throw new IOException("Journal is unavailable", failure);
+            if(pending.remaining() < record.length){
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + record.length));
+                pending.flip();
+                larger.put(pending);
+                pending = larger;
+            }
+            pending.put(record);
+            sequence = ++appendedCount;
+            records += count;
+        }
+        finally{
+            lock.unlock();
+        }
+        commit(sequence);
+        return record.length;
+    }
+
+    /**
+     * Waits until the record with the given sequence number has been written.
+     * The first thread to arrive writes everything appended so far in one batch while
+     * the others wait for it, so concurrent appends share one write and one fsync.
+     */
+    private void commit(long sequence) throws IOException {
+        lock.lock();
+        try{
+            while(writtenCount < sequence){
+                if(failure != null) throw new IOException("Journal is unavailable", failure);
+                if(writing){
+                    written.awaitUninterruptibly();
+                    continue;
+                }
+                writing = true;
+                ByteBuffer batch = pending;
+                pending = spare;
+                spare = batch;
+                long batchEnd = appendedCount;
+                lock.unlock();
+                IOException error = null;
+                try{
+                    batch.flip();
+                    while(batch.hasRemaining()){
+                        channel.write(batch);
+                    }
+                    if(policy == FsyncPolicy.ALWAYS) channel.force(false);
+                }
+                catch(IOException e){
+                    error = e;
+                }
+                finally{
+                    batch.clear();
+                    lock.lock();
+                    writing = false;
+                    if(error == null) writtenCount = batchEnd;
+                    else failure = error;
+                    written.signalAll();
+                }
+            }
+        }
+        finally{
+            lock.unlock();
+        }
+    }
+
+    //writes everything appended so far
+    private void flush() throws IOException {
+        long sequence;
+        lock.lock();
+        try{
+            sequence = appendedCount;
+        }
+        finally{
+            lock.unlock();
+        }
+        commit(sequence);
+    }
+
+    /**
+     * Forces written records to disk, used with FsyncPolicy.INTERVAL.
+     * Appends are not held up while the fsync runs.
+     */
+    void sync() throws IOException {
+        FileChannel current = channel;
+        try{
+            current.force(false);
+        }
+        catch(ClosedChannelException e){
+            //compaction replaced the journal and forced the new files itself
+        }
+    }
+
+    //number of records in the journal that are not yet in the main file
+    long records() {
+        lock.lock();
+        try{
+            return records;
+        }
+        finally{
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Rewrites the main file from store in date order, the store must already contain every
+     * journal record. Then starts an empty journal. The caller has to stop appends while this runs.
+     */
+    void compact(TransactionStore store, DateIndex order) throws IOException {
+        flush();
+        Path temp = mainFile.resolveSibling(mainFile.getFileName() + ".tmp");
+        try(FileOutputStream output = new FileOutputStream(temp.toFile());
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), 1 << 16)){
+            //decoded once here, the dictionaries only keep bytes
+            String[] descriptions = store.descriptions().values();
+            String[] vendors = store.vendors().values();
+            StringBuilder line = new StringBuilder(128);
+            for(int position = 0; position < order.size(); position++){
+                int row = order.rowAt(position);
+                line.setLength(0);
+                TransactionFormat.appendRecord(line, store.epochDay(row), store.secondOfDay(row),
+                        descriptions[store.descriptionId(row)], vendors[store.vendorId(row)], store.cents(row));
+                writer.append(line);
+            }
+            writer.flush();
+            output.getChannel().force(true);
+        }
+        moveIntoPlace(temp, mainFile);
+        reset();
+    }
+
+    /**
+     * Renames temp over target, then forces the directory holding them, since the rename is only
+     * durable once the directory entry is on disk. temp must already be forced.
+     */
+    static void moveIntoPlace(Path temp, Path target) throws IOException {
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Path directory = target.toAbsolutePath().getParent();
+        try(FileChannel entries = FileChannel.open(directory, StandardOpenOption.READ)){
+            entries.force(true);
+        }
+        catch(IOException e){
+            //some platforms cannot open or force a directory, the rename still happened
+        }
+    }
+
+    //replaces the journal with an empty one whose header matches the current main file
+    private void reset() throws IOException {
+        if(channel != null) channel.close();
+        Path temp = journalFile.resolveSibling(journalFile.getFileName() + ".tmp");
+        try(FileChannel output = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)){
+            output.write(ByteBuffer.wrap((header() + "\n").getBytes(StandardCharsets.UTF_8)));
+            output.force(true);
+        }
+        moveIntoPlace(temp, journalFile);
+        channel = FileChannel.open(journalFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        lock.lock();
+        try{
+            records = 0;
+        }
+        finally{
+            lock.unlock();
+        }
+    }
+
+    private String header() throws IOException {
+        return HEADER_PREFIX + Files.size(mainFile) + " " + Files.getLastModifiedTime(mainFile).toMillis();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        if(policy != FsyncPolicy.NEVER) channel.force(false);
+        channel.close();
+    }
+}
@@ -0,0 +1,163 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+ * Parallel loader for the transactions file.
+ * ------------------------------------------------
+ * The file is cut into chunks that always end on a line break,
+ * every chunk is memory-mapped and parsed by TransactionParser on the fork-join pool,
+ * and the parsed chunks are joined back together in file order.
+ * Sorting is left to the caller, which only has to do it once.
+ */
+class TransactionLoader {
+
+    //target size of one chunk, the real chunk runs on to the end of its last line
+    static final int CHUNK_SIZE = 8 * 1024 * 1024;
+
+    private TransactionLoader() {
+    }
+
+    /**
+     * Reads every transaction in the file, in file order.
+     * Lines that cannot be parsed are skipped and reported in the result.
+     */
+    static LoadResult load(Path path) throws IOException {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            long[] bounds = chunkBounds(channel);
+            if(bounds.length < 2) return new LoadResult();
+            try{
+                return ForkJoinPool.commonPool().invoke(new ChunkTask(channel, bounds, 0, bounds.length - 1));
+            }
+            catch(UncheckedIOException e){
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Splits the file into chunk offsets. Entry i is where chunk i starts and
+     * the last entry is the file size, so chunk i is [bounds[i], bounds[i + 1]).
+     */
+    private static long[] chunkBounds(FileChannel channel) throws IOException {
+        long size = channel.size();
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long position = 0;
+        while(position + CHUNK_SIZE < size){
+            long end = nextLineStart(channel, position + CHUNK_SIZE, size, probe);
+            if(end >= size) break;
+            bounds.add(end);
+            position = end;
+        }
+        if(size > 0) bounds.add(size);
+        long[] result = new long[bounds.size()];
+        for(int i = 0; i < result.length; i++){
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    //returns the offset just past the first '\n' at or after position
+    private static long nextLineStart(FileChannel channel, long position, long size, ByteBuffer probe) throws IOException {
+        while(position < size){
+            probe.clear();
+            int read = channel.read(probe, position);
+            if(read <= 0) break;
+            for(int i = 0; i < read; i++){
+                if(probe.get(i) == '\n') return position + i + 1;
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static LoadResult parseChunk(FileChannel channel, long start, long end) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        LoadResult chunk = new LoadResult();
+        TransactionStore store = chunk.store;
+        chunk.lines = TransactionParser.parseLines(buffer, 0, buffer.limit(),
+                (epochDay, secondOfDay, line, descriptionStart, descriptionEnd, vendorStart, vendorEnd, cents) ->
+                        store.add(epochDay, secondOfDay, cents, line, descriptionStart, descriptionEnd, vendorStart, vendorEnd),
+                chunk.malformed);
+        return chunk;
+    }
+
+    /**
+     * What a load produced: a store with the parsed transactions in file order, the lines that were
+     * rejected with their line numbers in the file, and how many lines were read, which places the
+     * line numbers of the chunk appended next.
+     */
+    static class LoadResult {
+        final TransactionStore store = new TransactionStore();
+        final List<TransactionParser.MalformedLine> malformed = new ArrayList<>();
+        long lines;
+
+        TransactionStore getStore() {
+            return store;
+        }
+
+        List<TransactionParser.MalformedLine> getMalformed() {
+            return malformed;
+        }
+
+        //appends the result of the chunk that directly follows this one in the file
+        void append(LoadResult next) {
+            store.addAll(next.store);
+            for(TransactionParser.MalformedLine line : next.malformed){
+                malformed.add(new TransactionParser.MalformedLine(lines + line.lineNumber(), line.reason()));
+            }
+            lines += next.lines;
+        }
+    }
+
+    /**
+     * Parses the chunks [from, to) by splitting the range in half until a single chunk is left.
+     * The left half is always added before the right half so file order is kept.
+     */
+    private static class ChunkTask extends RecursiveTask<LoadResult> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long[] bounds;
+        private final int from;
+        private final int to;
+
+        ChunkTask(FileChannel channel, long[] bounds, int from, int to) {
+            this.channel = channel;
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected LoadResult compute() {
+            if(to - from == 1){
+                try{
+                    return parseChunk(channel, bounds[from], bounds[to]);
+                }
+                catch(IOException e){
+                    throw new UncheckedIOException(e);
+                }
+            }
+            int middle = (from + to) >>> 1;
+            ChunkTask left = new ChunkTask(channel, bounds, from, middle);
+            ChunkTask right = new ChunkTask(channel, bounds, middle, to);
+            right.fork();
+            LoadResult result = left.compute();
+            result.append(right.join());
+            return result;
+        }
+    }
+}
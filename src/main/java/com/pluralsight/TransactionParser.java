@@ -0,0 +1,236 @@
+package com.pluralsight;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/*
+ * Byte-level parser for the transactions file.
+ * ------------------------------------------------
+ * Line format (pipe-delimited)
+ *     yyyy-MM-dd|HH:mm:ss|description|vendor|amount
+ * Dates and times are fixed width and decoded by hand into an epoch day and a
+ * second of the day, amounts are read as fixed-point cents. Nothing is allocated
+ * while scanning: the fields are handed to a RecordSink as offsets into the buffer.
+ */
+final class TransactionParser {
+
+    /**
+     * Receives one parsed line. The description and vendor are the byte ranges
+     * [start, end) of the buffer and are only valid during the call.
+     */
+    interface RecordSink {
+        void accept(int epochDay, int secondOfDay, ByteBuffer buffer, int descriptionStart, int descriptionEnd,
+                    int vendorStart, int vendorEnd, long cents);
+    }
+
+    /**
+     * A line that could not be parsed. Line numbers start at 1.
+     */
+    record MalformedLine(long lineNumber, String reason) {
+    }
+
+    private static final byte PIPE = '|';
+    private static final byte NEW_LINE = '\n';
+    private static final byte RETURN = '\r';
+
+    //largest amount we accept, keeps cents well inside a long
+    private static final long MAX_CENTS = 1_000_000_000_000_000L;
+
+    private TransactionParser() {
+    }
+
+    /**
+     * Parses every line in [from, to) of the buffer.
+     * Blank lines are skipped, malformed lines are added to errors with their line number
+     * counted from 1 at from.
+     * @return the number of lines seen, including blank and malformed ones
+     */
+    static long parseLines(ByteBuffer buffer, int from, int to, RecordSink sink, List<MalformedLine> errors) {
+        long lineNumber = 0;
+        int lineStart = from;
+        while(lineStart < to){
+            int lineEnd = lineStart;
+            while(lineEnd < to && buffer.get(lineEnd) != NEW_LINE){
+                lineEnd++;
+            }
+            lineNumber++;
+            int contentEnd = lineEnd;
+            if(contentEnd > lineStart && buffer.get(contentEnd - 1) == RETURN) contentEnd--;
+            if(contentEnd > lineStart){
+                String error = parseLine(buffer, lineStart, contentEnd, sink);
+                if(error != null) errors.add(new MalformedLine(lineNumber, error));
+            }
+            lineStart = lineEnd + 1;
+        }
+        return lineNumber;
+    }
+
+    /**
+     * Parses one line without its line break.
+     * @return null if the line was handed to the sink, otherwise why it was rejected
+     */
+    static String parseLine(ByteBuffer buffer, int start, int end, RecordSink sink) {
+        int dateEnd = indexOf(buffer, start, end);
+        if(dateEnd - start != 10) return "invalid date";
+        int epochDay = parseDate(buffer, start);
+        if(epochDay == Integer.MIN_VALUE) return "invalid date";
+
+        int timeStart = dateEnd + 1;
+        int timeEnd = indexOf(buffer, timeStart, end);
+        if(timeEnd - timeStart != 8) return "invalid time";
+        int secondOfDay = parseTime(buffer, timeStart);
+        if(secondOfDay < 0) return "invalid time";
+
+        int descriptionStart = timeEnd + 1;
+        int descriptionEnd = indexOf(buffer, descriptionStart, end);
+        if(descriptionEnd >= end) return "missing fields";
+        int vendorStart = descriptionEnd + 1;
+        int vendorEnd = indexOf(buffer, vendorStart, end);
+        if(vendorEnd >= end) return "missing fields";
+        int amountStart = vendorEnd + 1;
+        if(indexOf(buffer, amountStart, end) < end) return "too many fields";
+        long cents = parseCents(buffer, amountStart, end);
+        if(cents == Long.MIN_VALUE) return "invalid amount";
+
+        sink.accept(epochDay, secondOfDay, buffer, descriptionStart, descriptionEnd, vendorStart, vendorEnd, cents);
+        return null;
+    }
+
+    //index of the next pipe in [from, end), or end if there is none
+    private static int indexOf(ByteBuffer buffer, int from, int end) {
+        for(int i = from; i < end; i++){
+            if(buffer.get(i) == PIPE) return i;
+        }
+        return end;
+    }
+
+    /**
+     * Decodes yyyy-MM-dd at offset into an epoch day (same value as LocalDate.toEpochDay).
+     * @return Integer.MIN_VALUE if the date is not valid
+     */
+    static int parseDate(ByteBuffer buffer, int offset) {
+        int year = digits(buffer, offset, 4);
+        int month = digits(buffer, offset + 5, 2);
+        int day = digits(buffer, offset + 8, 2);
+        if(year < 0 || month < 1 || month > 12 || day < 1) return Integer.MIN_VALUE;
+        if(buffer.get(offset + 4) != '-' || buffer.get(offset + 7) != '-') return Integer.MIN_VALUE;
+        if(day > lengthOfMonth(year, month)) return Integer.MIN_VALUE;
+        return (int) toEpochDay(year, month, day);
+    }
+
+    /**
+     * Decodes HH:mm:ss at offset into the second of the day.
+     * @return -1 if the time is not valid
+     */
+    static int parseTime(ByteBuffer buffer, int offset) {
+        int hour = digits(buffer, offset, 2);
+        int minute = digits(buffer, offset + 3, 2);
+        int second = digits(buffer, offset + 6, 2);
+        if(buffer.get(offset + 2) != ':' || buffer.get(offset + 5) != ':') return -1;
+        if(hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) return -1;
+        return hour * 3600 + minute * 60 + second;
+    }
+
+    /**
+     * Reads a decimal amount such as -89.5 or 1500 as cents.
+     * Digits after the second decimal place are rounded half away from zero.
+     * @return Long.MIN_VALUE if the amount is not a number
+     */
+    static long parseCents(ByteBuffer buffer, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if(i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')){
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        long whole = 0;
+        int wholeDigits = 0;
+        while(i < end && isDigit(buffer.get(i))){
+            whole = whole * 10 + (buffer.get(i) - '0');
+            if(whole * 100 > MAX_CENTS) return Long.MIN_VALUE;
+            wholeDigits++;
+            i++;
+        }
+        long fraction = 0;
+        int fractionDigits = 0;
+        boolean roundUp = false;
+        if(i < end && buffer.get(i) == '.'){
+            i++;
+            while(i < end && isDigit(buffer.get(i))){
+                int digit = buffer.get(i) - '0';
+                if(fractionDigits < 2) fraction = fraction * 10 + digit;
+                else if(fractionDigits == 2) roundUp = digit >= 5;
+                fractionDigits++;
+                i++;
+            }
+        }
+        if(i != end || wholeDigits + fractionDigits == 0) return Long.MIN_VALUE;
+        if(fractionDigits == 1) fraction *= 10;
+        long cents = whole * 100 + fraction + (roundUp ? 1 : 0);
+        return negative ? -cents : cents;
+    }
+
+    //parseCents for an amount typed in, any character that is not ASCII makes it invalid
+    static long parseCents(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        return parseCents(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    /**
+     * Decodes [start, end) of the buffer as UTF-8 with the first letter capitalized,
+     * using scratch to avoid a second copy.
+     */
+    static String decodeCapitalized(ByteBuffer buffer, int start, int end, byte[] scratch) {
+        int length = end - start;
+        if(length == 0) return "";
+        byte[] bytes = length <= scratch.length ? scratch : new byte[length];
+        buffer.get(start, bytes, 0, length);
+        byte first = bytes[0];
+        if(first >= 'a' && first <= 'z'){
+            bytes[0] = (byte) (first - ('a' - 'A'));
+        }
+        String text = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        //only non-ASCII first letters need the slow path
+        return first < 0 ? FinancialTracker.capitalizeFirst(text) : text;
+    }
+
+    private static int digits(ByteBuffer buffer, int offset, int count) {
+        int value = 0;
+        for(int i = offset; i < offset + count; i++){
+            byte b = buffer.get(i);
+            if(!isDigit(b)) return -1;
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        return switch (month) {
+            case 2 -> isLeapYear(year) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+
+    //same arithmetic as LocalDate.toEpochDay, years are 0-9999 here
+    private static long toEpochDay(int year, int month, int day) {
+        long total = 365L * year;
+        total += (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        total += (367L * month - 362) / 12;
+        total += day - 1;
+        if(month > 2){
+            total--;
+            if(!isLeapYear(year)) total--;
+        }
+        return total - 719528;
+    }
+}
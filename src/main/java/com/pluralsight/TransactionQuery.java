@@ -0,0 +1,105 @@
+package com.pluralsight;
+
+import java.time.LocalDate;
+
+/*
+ * The conditions of a custom search. Every condition is optional and the
+ * ones that are set all have to match.
+ */
+final class TransactionQuery {
+    private int startDay = Integer.MIN_VALUE;
+    private int endDay = Integer.MAX_VALUE;
+    private String description;
+    private String vendor;
+    private long lowestCents = Long.MIN_VALUE;
+    private long highestCents = Long.MAX_VALUE;
+    private boolean absoluteAmount;
+
+    //dates from start to end, both included, either may be null
+    TransactionQuery between(LocalDate start, LocalDate end) {
+        startDay = start == null ? Integer.MIN_VALUE : (int) start.toEpochDay();
+        endDay = end == null ? Integer.MAX_VALUE : (int) end.toEpochDay();
+        return this;
+    }
+
+    //description equal to this one, ignoring case
+    TransactionQuery description(String description) {
+        this.description = description;
+        return this;
+    }
+
+    //vendor equal to this one, ignoring case
+    TransactionQuery vendor(String vendor) {
+        this.vendor = vendor;
+        return this;
+    }
+
+    /**
+     * Amount range in cents, both ends included. The size of the amount is compared,
+     * so payments of that size match too.
+     */
+    TransactionQuery amountBetween(long lowest, long highest) {
+        lowestCents = lowest;
+        highestCents = highest;
+        absoluteAmount = true;
+        return this;
+    }
+
+    //signed amount of at least this many cents
+    TransactionQuery amountAtLeast(long lowest) {
+        lowestCents = lowest;
+        highestCents = Long.MAX_VALUE;
+        absoluteAmount = false;
+        return this;
+    }
+
+    //signed amount of at most this many cents
+    TransactionQuery amountAtMost(long highest) {
+        lowestCents = Long.MIN_VALUE;
+        highestCents = highest;
+        absoluteAmount = false;
+        return this;
+    }
+
+    //whether an amount in cents is inside the amount range
+    boolean amountMatches(long cents) {
+        if(absoluteAmount) cents = Math.abs(cents);
+        return cents >= lowestCents && cents <= highestCents;
+    }
+
+    boolean hasDateRange() {
+        return startDay != Integer.MIN_VALUE || endDay != Integer.MAX_VALUE;
+    }
+
+    boolean hasAmountRange() {
+        return lowestCents != Long.MIN_VALUE || highestCents != Long.MAX_VALUE;
+    }
+
+    int getStartDay() {
+        return startDay;
+    }
+
+    int getEndDay() {
+        return endDay;
+    }
+
+    String getDescription() {
+        return description;
+    }
+
+    String getVendor() {
+        return vendor;
+    }
+
+    long getLowestCents() {
+        return lowestCents;
+    }
+
+    long getHighestCents() {
+        return highestCents;
+    }
+
+    boolean isAbsoluteAmount() {
+        return absoluteAmount;
+    }
+}
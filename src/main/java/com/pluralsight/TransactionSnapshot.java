@@ -0,0 +1,203 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/*
+ * Binary snapshot of the store.
+ * ------------------------------------------------
+ * Layout, all numbers little-endian:
+ *     header       64 bytes, see below
+ *     epoch days       int  per row
+ *     seconds of day   int  per row
+ *     cents            long per row
+ *     description ids  int  per row
+ *     vendor ids       int  per row
+ *     dictionary   every description, then every vendor, each as an int byte length and UTF-8 bytes
+ * The header holds the magic number, version, row count, dictionary sizes, the size and last modified
+ * time of the CSV the snapshot was made from, and a CRC32C of the columns and one of the dictionary.
+ * The columns are fixed width, so loading maps each one and copies it into an array in one go,
+ * without parsing a single row.
+ */
+final class TransactionSnapshot {
+    //"FTSNAP01" read as a little-endian long
+    private static final long MAGIC = 0x3130_5041_4E53_5446L;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int ROW_SIZE = 4 + 4 + 8 + 4 + 4;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    private TransactionSnapshot() {
+    }
+
+    /**
+     * Writes the rows [0, rows) of the store. The snapshot remembers the size and last modified
+     * time of source, the CSV holding the same rows, or zeros if source is null.
+     * It is written next to file and moved into place, so a crash leaves the old snapshot or the new one.
+     */
+    static void write(Path file, TransactionStore store, int rows, Path source) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try(FileChannel output = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)){
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            output.position(HEADER_SIZE);
+            CRC32C columns = new CRC32C();
+            for(int column = 0; column < 5; column++){
+                for(int row = 0; row < rows; row++){
+                    if(buffer.remaining() < 8) drain(output, buffer, columns);
+                    switch (column) {
+                        case 0 -> buffer.putInt(store.epochDay(row));
+                        case 1 -> buffer.putInt(store.secondOfDay(row));
+                        case 2 -> buffer.putLong(store.cents(row));
+                        case 3 -> buffer.putInt(store.descriptionId(row));
+                        default -> buffer.putInt(store.vendorId(row));
+                    }
+                }
+            }
+            drain(output, buffer, columns);
+
+            CRC32C dictionary = new CRC32C();
+            long dictionaryStart = output.position();
+            for(StringDictionary strings : List.of(store.descriptions(), store.vendors())){
+                for(int id = 0; id < strings.size(); id++){
+                    byte[] bytes = strings.bytes(id);
+                    if(buffer.remaining() < 4 + bytes.length) drain(output, buffer, dictionary);
+                    if(buffer.remaining() < 4 + bytes.length){
+                        //a string longer than the buffer goes out on its own
+                        buffer.putInt(bytes.length);
+                        drain(output, buffer, dictionary);
+                        ByteBuffer large = ByteBuffer.wrap(bytes);
+                        dictionary.update(large.duplicate());
+                        writeFully(output, large);
+                    }
+                    else{
+                        buffer.putInt(bytes.length).put(bytes);
+                    }
+                }
+            }
+            drain(output, buffer, dictionary);
+            long dictionaryBytes = output.position() - dictionaryStart;
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(MAGIC).putInt(VERSION).putInt(rows);
+            header.putLong(source == null ? 0 : Files.size(source));
+            header.putLong(source == null ? 0 : Files.getLastModifiedTime(source).toMillis());
+            header.putInt(store.descriptions().size()).putInt(store.vendors().size());
+            header.putLong(dictionaryBytes).putLong(columns.getValue()).putLong(dictionary.getValue());
+            header.flip();
+            output.position(0);
+            writeFully(output, header);
+            output.force(true);
+        }
+        TransactionJournal.moveIntoPlace(temp, file);
+    }
+
+    private static void drain(FileChannel output, ByteBuffer buffer, CRC32C checksum) throws IOException {
+        buffer.flip();
+        checksum.update(buffer.duplicate());
+        writeFully(output, buffer);
+        buffer.clear();
+    }
+
+    private static void writeFully(FileChannel output, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()){
+            output.write(buffer);
+        }
+    }
+
+    /**
+     * Loads the snapshot into store, which must be empty.
+     * @param source the CSV the snapshot has to match, or null to take any snapshot
+     * @return false if there is no snapshot or it was made from another version of source
+     * @throws IOException if the snapshot is damaged or from an unknown version
+     */
+    static boolean read(Path file, Path source, TransactionStore store) throws IOException {
+        try(FileChannel input = FileChannel.open(file, StandardOpenOption.READ)){
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while(header.hasRemaining()){
+                if(input.read(header) < 0) throw new IOException("Snapshot header is cut off");
+            }
+            header.flip();
+            if(header.getLong() != MAGIC) throw new IOException("Not a transaction snapshot");
+            if(header.getInt() != VERSION) throw new IOException("Unknown snapshot version");
+            int rows = header.getInt();
+            long sourceSize = header.getLong();
+            long sourceModified = header.getLong();
+            if(source != null && (sourceSize != Files.size(source)
+                    || sourceModified != Files.getLastModifiedTime(source).toMillis())) return false;
+            int descriptionCount = header.getInt();
+            int vendorCount = header.getInt();
+            long dictionaryBytes = header.getLong();
+            long columnsChecksum = header.getLong();
+            long dictionaryChecksum = header.getLong();
+            long columnsEnd = HEADER_SIZE + (long) rows * ROW_SIZE;
+            if(rows < 0 || input.size() != columnsEnd + dictionaryBytes) throw new IOException("Snapshot size does not match its header");
+
+            CRC32C columns = new CRC32C();
+            long position = HEADER_SIZE;
+            int[] epochDays = new int[rows];
+            int[] secondsOfDay = new int[rows];
+            long[] cents = new long[rows];
+            int[] descriptionIds = new int[rows];
+            int[] vendorIds = new int[rows];
+            map(input, position, rows * 4L, columns).asIntBuffer().get(epochDays);
+            position += rows * 4L;
+            map(input, position, rows * 4L, columns).asIntBuffer().get(secondsOfDay);
+            position += rows * 4L;
+            map(input, position, rows * 8L, columns).asLongBuffer().get(cents);
+            position += rows * 8L;
+            map(input, position, rows * 4L, columns).asIntBuffer().get(descriptionIds);
+            position += rows * 4L;
+            map(input, position, rows * 4L, columns).asIntBuffer().get(vendorIds);
+            if(columns.getValue() != columnsChecksum) throw new IOException("Snapshot columns are damaged");
+
+            CRC32C dictionary = new CRC32C();
+            MappedByteBuffer strings = map(input, columnsEnd, dictionaryBytes, dictionary);
+            if(dictionary.getValue() != dictionaryChecksum) throw new IOException("Snapshot dictionary is damaged");
+            List<String> descriptions = readStrings(strings, descriptionCount);
+            List<String> vendors = readStrings(strings, vendorCount);
+            for(int row = 0; row < rows; row++){
+                if(descriptionIds[row] >= descriptionCount || vendorIds[row] >= vendorCount
+                        || descriptionIds[row] < 0 || vendorIds[row] < 0) throw new IOException("Snapshot row " + row + " has an unknown id");
+            }
+            store.load(rows, epochDays, secondsOfDay, cents, descriptionIds, vendorIds, descriptions, vendors);
+            return true;
+        }
+        catch(NoSuchFileException e){
+            return false;
+        }
+    }
+
+    //maps [position, position + length) of the file and adds it to the checksum
+    private static MappedByteBuffer map(FileChannel input, long position, long length, CRC32C checksum) throws IOException {
+        if(length > Integer.MAX_VALUE) throw new IOException("Snapshot block is too large");
+        MappedByteBuffer block = input.map(FileChannel.MapMode.READ_ONLY, position, length);
+        block.order(ByteOrder.LITTLE_ENDIAN);
+        checksum.update(block.duplicate());
+        return block;
+    }
+
+    private static List<String> readStrings(ByteBuffer buffer, int count) throws IOException {
+        List<String> strings = new ArrayList<>(count);
+        for(int i = 0; i < count; i++){
+            if(buffer.remaining() < 4) throw new IOException("Snapshot dictionary is cut off");
+            int length = buffer.getInt();
+            if(length < 0 || length > buffer.remaining()) throw new IOException("Snapshot dictionary is cut off");
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            strings.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return strings;
+    }
+}
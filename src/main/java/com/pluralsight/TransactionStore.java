@@ -0,0 +1,178 @@
+package com.pluralsight;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Column store for the ledger.
+ * ------------------------------------------------
+ * Every transaction is one row id, and each field lives in its own primitive array:
+ *     epoch day | second of day | amount in cents | description id | vendor id
+ * Descriptions and vendors are dictionary encoded, so a row costs 24 bytes.
+ * No object is made per row, reports are formatted straight from the columns by ReportWriter.
+ */
+final class TransactionStore {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private int[] epochDays = new int[INITIAL_CAPACITY];
+    private int[] secondsOfDay = new int[INITIAL_CAPACITY];
+    private long[] cents = new long[INITIAL_CAPACITY];
+    private int[] descriptionIds = new int[INITIAL_CAPACITY];
+    private int[] vendorIds = new int[INITIAL_CAPACITY];
+    private int size;
+
+    private final StringDictionary descriptions = new StringDictionary();
+    private final StringDictionary vendors = new StringDictionary();
+
+    /**
+     * Adds a row and returns its row id. Description and vendor are stored as they are.
+     */
+    int add(int epochDay, int secondOfDay, long amountCents, String description, String vendor) {
+        return add(epochDay, secondOfDay, amountCents, descriptions.intern(description), vendors.intern(vendor));
+    }
+
+    /**
+     * Adds a row straight from a parsed line, see TransactionParser.RecordSink. Description and vendor
+     * are capitalized like decodeCapitalized does, and only become Strings the first time they are seen.
+     */
+    int add(int epochDay, int secondOfDay, long amountCents, ByteBuffer line, int descriptionStart, int descriptionEnd,
+            int vendorStart, int vendorEnd) {
+        return add(epochDay, secondOfDay, amountCents, descriptions.intern(line, descriptionStart, descriptionEnd),
+                vendors.intern(line, vendorStart, vendorEnd));
+    }
+
+    /**
+     * Adds a row whose description and vendor ids come from this store's dictionaries.
+     */
+    int add(int epochDay, int secondOfDay, long amountCents, int descriptionId, int vendorId) {
+        if(size == epochDays.length) grow(size + 1);
+        epochDays[size] = epochDay;
+        secondsOfDay[size] = secondOfDay;
+        cents[size] = amountCents;
+        descriptionIds[size] = descriptionId;
+        vendorIds[size] = vendorId;
+        return size++;
+    }
+
+    /**
+     * Takes over columns that were read in one piece, e.g. by TransactionSnapshot. The arrays are kept,
+     * not copied, and must hold at least size rows. Dictionary ids are the positions in the two lists.
+     * Only allowed while the store is empty.
+     */
+    void load(int size, int[] epochDays, int[] secondsOfDay, long[] cents, int[] descriptionIds, int[] vendorIds,
+              List<String> descriptions, List<String> vendors) {
+        if(this.size != 0) throw new IllegalStateException("Store is not empty");
+        for(String description : descriptions){
+            this.descriptions.intern(description);
+        }
+        for(String vendor : vendors){
+            this.vendors.intern(vendor);
+        }
+        this.epochDays = epochDays;
+        this.secondsOfDay = secondsOfDay;
+        this.cents = cents;
+        this.descriptionIds = descriptionIds;
+        this.vendorIds = vendorIds;
+        this.size = size;
+    }
+
+    /**
+     * Appends every row of other after the rows of this store, translating its dictionary ids.
+     */
+    void addAll(TransactionStore other) {
+        int[] descriptionMap = remap(other.descriptions, descriptions);
+        int[] vendorMap = remap(other.vendors, vendors);
+        grow(size + other.size);
+        System.arraycopy(other.epochDays, 0, epochDays, size, other.size);
+        System.arraycopy(other.secondsOfDay, 0, secondsOfDay, size, other.size);
+        System.arraycopy(other.cents, 0, cents, size, other.size);
+        for(int row = 0; row < other.size; row++){
+            descriptionIds[size + row] = descriptionMap[other.descriptionIds[row]];
+            vendorIds[size + row] = vendorMap[other.vendorIds[row]];
+        }
+        size += other.size;
+    }
+
+    private static int[] remap(StringDictionary from, StringDictionary to) {
+        int[] map = new int[from.size()];
+        for(int id = 0; id < map.length; id++){
+            map[id] = to.intern(from.get(id));
+        }
+        return map;
+    }
+
+    private void grow(int minCapacity) {
+        if(minCapacity <= epochDays.length) return;
+        int capacity = Math.max(minCapacity, epochDays.length + (epochDays.length >> 1));
+        epochDays = Arrays.copyOf(epochDays, capacity);
+        secondsOfDay = Arrays.copyOf(secondsOfDay, capacity);
+        cents = Arrays.copyOf(cents, capacity);
+        descriptionIds = Arrays.copyOf(descriptionIds, capacity);
+        vendorIds = Arrays.copyOf(vendorIds, capacity);
+    }
+
+    int size() {
+        return size;
+    }
+
+    int epochDay(int row) {
+        return epochDays[row];
+    }
+
+    int secondOfDay(int row) {
+        return secondsOfDay[row];
+    }
+
+    long cents(int row) {
+        return cents[row];
+    }
+
+    /**
+     * The epoch day column itself, for scans that read it in bulk. Only [0, size()) is valid,
+     * and the store moves to a new array when it grows, so read it under the ledger lock.
+     */
+    int[] epochDayColumn() {
+        return epochDays;
+    }
+
+    //the cents column itself, see epochDayColumn
+    long[] centsColumn() {
+        return cents;
+    }
+
+    //same for every row whose vendor is equal ignoring case
+    int foldedVendorId(int row) {
+        return vendors.foldedId(vendorIds[row]);
+    }
+
+    //same for every row whose description is equal ignoring case
+    int foldedDescriptionId(int row) {
+        return descriptions.foldedId(descriptionIds[row]);
+    }
+
+    int descriptionId(int row) {
+        return descriptionIds[row];
+    }
+
+    int vendorId(int row) {
+        return vendorIds[row];
+    }
+
+    //the dictionaries keep bytes, so this and vendor decode a new String on every call
+    String description(int row) {
+        return descriptions.get(descriptionIds[row]);
+    }
+
+    String vendor(int row) {
+        return vendors.get(vendorIds[row]);
+    }
+
+    StringDictionary descriptions() {
+        return descriptions;
+    }
+
+    StringDictionary vendors() {
+        return vendors;
+    }
+}
@@ -0,0 +1,47 @@
+package com.pluralsight;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * The match pass of ColumnScan with the Vector API.
+ * Cents are compared in the widest vectors the CPU has, and epoch days in int vectors of half
+ * that width so both have the same number of lanes and their masks can be combined.
+ * Only loaded when ColumnScan.VECTOR_AVAILABLE is true.
+ */
+final class VectorScan {
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS =
+            VectorSpecies.of(int.class, VectorShape.forBitSize(LONGS.vectorBitSize() / 2));
+
+    private VectorScan() {
+    }
+
+    //sets the bit of every matching row in [from, to), from must be a multiple of 64
+    static void match(int[] epochDays, long[] cents, TransactionQuery query, long[] bits, int from, int to) {
+        int lanes = LONGS.length();
+        int startDay = query.getStartDay();
+        int endDay = query.getEndDay();
+        long lowest = query.getLowestCents();
+        long highest = query.getHighestCents();
+        boolean absolute = query.isAbsoluteAmount();
+        boolean dates = query.hasDateRange();
+        int row = from;
+        for(; row <= to - lanes; row += lanes){
+            LongVector amounts = LongVector.fromArray(LONGS, cents, row);
+            if(absolute) amounts = amounts.lanewise(VectorOperators.ABS);
+            VectorMask<Long> matches = amounts.compare(VectorOperators.GE, lowest).and(amounts.compare(VectorOperators.LE, highest));
+            if(dates){
+                IntVector days = IntVector.fromArray(INTS, epochDays, row);
+                matches = matches.and(days.compare(VectorOperators.GE, startDay).and(days.compare(VectorOperators.LE, endDay)).cast(LONGS));
+            }
+            //lanes divides 64, so the lanes of one vector never straddle two words
+            bits[row >>> 6] |= matches.toLong() << (row & 63);
+        }
+        ColumnScan.matchScalar(epochDays, cents, query, bits, row, to);
+    }
+}
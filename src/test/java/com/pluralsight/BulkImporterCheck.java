@@ -0,0 +1,93 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Checks of BulkImporter, run with
+ *     java -cp target/classes:target/test-classes com.pluralsight.BulkImporterCheck
+ * Throws an AssertionError on the first check that fails.
+ */
+final class BulkImporterCheck {
+
+    public static void main(String[] args) throws Exception {
+        Path directory = Files.createTempDirectory("import-check");
+        try{
+            failedLastBatchReturns(directory);
+            overlappingFiles(directory);
+            fileGivenTwice(directory);
+        }
+        finally{
+            delete(directory);
+        }
+        System.out.println("BulkImporterCheck passed");
+    }
+
+    //the journal fails on the last batch after the insert stage has taken every end marker
+    private static void failedLastBatchReturns(Path directory) throws Exception {
+        TransactionStore store = new TransactionStore();
+        LedgerService ledger = new LedgerService(store, new DateIndex(), new TextIndex(), new Rollups());
+        Path mainFile = Files.createFile(directory.resolve("transactions.csv"));
+        TransactionJournal journal = TransactionJournal.open(mainFile, directory.resolve("transactions.csv.journal"),
+                TransactionJournal.FsyncPolicy.ALWAYS, new TransactionStore(), new ArrayList<>());
+        journal.close();
+        ledger.setJournal(journal);
+        Path statement = Files.writeString(directory.resolve("statement.csv"), "2025-01-01|09:00:00|Coffee|Starbucks|-4.50\n");
+
+        BulkImporter.Result[] result = new BulkImporter.Result[1];
+        Thread importing = new Thread(() -> result[0] = new BulkImporter(ledger, store, 2).importFiles(List.of(statement)));
+        importing.setDaemon(true);
+        importing.start();
+        importing.join(TimeUnit.SECONDS.toMillis(10));
+        check(!importing.isAlive(), "importFiles did not return after the journal failed");
+        check(result[0].failure != null, "the journal failure was not reported");
+        check(result[0].imported == 0, "rows were counted as imported although the batch failed");
+    }
+
+    //equal lines in one file are kept, a later file in the same run is checked against the earlier ones
+    private static void overlappingFiles(Path directory) throws IOException {
+        TransactionStore store = new TransactionStore();
+        LedgerService ledger = new LedgerService(store, new DateIndex(), new TextIndex(), new Rollups());
+        Path first = Files.writeString(directory.resolve("first.csv"),
+                "2025-01-02|09:00:00|Dup|V|2\n2025-01-02|09:00:00|Dup|V|2\n2025-01-03|09:00:00|Coffee|Starbucks|-4.50\n");
+        Path second = Files.writeString(directory.resolve("second.csv"),
+                "2025-01-03|09:00:00|Coffee|STARBUCKS|-4.50\n2025-01-04|09:00:00|Tea|Cafe|-3\n");
+        BulkImporter.Result result = new BulkImporter(ledger, store, 2).importFiles(List.of(first, second));
+        check(result.failure == null, "import failed: " + result.failure);
+        check(result.imported == 4, "expected 4 rows imported, got " + result.imported);
+        check(result.duplicates == 1, "expected 1 duplicate, got " + result.duplicates);
+
+        result = new BulkImporter(ledger, store, 2).importFiles(List.of(second));
+        check(result.imported == 0 && result.duplicates == 2, "a second run imported rows it already had");
+    }
+
+    //a file given twice has its rejected lines reported once per argument
+    private static void fileGivenTwice(Path directory) throws IOException {
+        TransactionStore store = new TransactionStore();
+        LedgerService ledger = new LedgerService(store, new DateIndex(), new TextIndex(), new Rollups());
+        Path statement = Files.writeString(directory.resolve("twice.csv"), "2025-01-05|09:00:00|Gas|Shell|-40\nnot a line\n");
+        BulkImporter.Result result = new BulkImporter(ledger, store, 2).importFiles(List.of(statement, statement));
+        check(result.rejected.size() == 2, "expected rejected lines for 2 arguments, got " + result.rejected.size());
+        check(result.rejected.get(0).size() == 1 && result.rejected.get(1).size() == 1,
+                "rejected lines of the two arguments were merged");
+        check(result.rejected.get(1).get(0).lineNumber() == 2, "wrong line number for the second argument");
+        check(result.imported == 1 && result.duplicates == 1, "the second copy of the file was not deduplicated");
+    }
+
+    private static void check(boolean condition, String message) {
+        if(!condition) throw new AssertionError(message);
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try(var files = Files.list(directory)){
+            for(Path file : (Iterable<Path>) files::iterator){
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+}
@@ -0,0 +1,181 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * Stress check of LedgerService, run with
+ *     java -cp target/classes:target/test-classes com.pluralsight.LedgerServiceCheck
+ * Writers record batches on random days while readers run reports and a compactor rewrites the
+ * main file, all through one journal. It fails if
+ *     a reader sees a batch half recorded, or the store, date index, text index and rollups disagree
+ *     the date index is not sorted by date, then row id, or has a row twice
+ *     the rows in the main file and the journal are not the rows in the store
+ *     replaying the main file and the journal afterwards does not give the same ledger
+ */
+final class LedgerServiceCheck {
+
+    private static final int WRITERS = 8;
+    private static final int READERS = 2;
+    private static final int BATCHES = 200;
+    private static final int BATCH_SIZE = 16;
+    private static final int FIRST_DAY = 20_000;
+    private static final int DAYS = 365;
+
+    public static void main(String[] args) throws Exception {
+        Path directory = Files.createTempDirectory("ledger-check");
+        try{
+            run(directory);
+        }
+        finally{
+            try(var files = Files.list(directory)){
+                for(Path file : (Iterable<Path>) files::iterator){
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+        System.out.println("LedgerServiceCheck passed");
+    }
+
+    private static void run(Path directory) throws Exception {
+        TransactionStore store = new TransactionStore();
+        DateIndex dateIndex = new DateIndex();
+        TextIndex textIndex = new TextIndex();
+        Rollups rollups = new Rollups();
+        LedgerService ledger = new LedgerService(store, dateIndex, textIndex, rollups);
+        Path mainFile = Files.createFile(directory.resolve("transactions.csv"));
+        Path journalFile = directory.resolve("transactions.csv.journal");
+        TransactionJournal journal = TransactionJournal.open(mainFile, journalFile, TransactionJournal.FsyncPolicy.NEVER,
+                new TransactionStore(), new ArrayList<>());
+        ledger.setJournal(journal);
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Thread> writers = new ArrayList<>();
+        for(int w = 0; w < WRITERS; w++){
+            String vendor = "Vendor " + w;
+            writers.add(start("writer-" + w, failure, () -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for(int b = 0; b < BATCHES; b++){
+                    List<LedgerService.NewTransaction> batch = new ArrayList<>(BATCH_SIZE);
+                    int day = FIRST_DAY + random.nextInt(DAYS);
+                    for(int i = 0; i < BATCH_SIZE; i++){
+                        //the amount gives the position in the batch, so a reader can tell a complete batch
+                        batch.add(new LedgerService.NewTransaction(day, random.nextInt(86_400), -(i + 1), "Batch " + b, vendor));
+                    }
+                    ledger.recordAll(batch);
+                }
+            }));
+        }
+        List<Thread> others = new ArrayList<>();
+        for(int r = 0; r < READERS; r++){
+            others.add(start("reader-" + r, failure, () -> {
+                for(int reads = 0; writing.get(); reads++){
+                    boolean full = reads % 50 == 0;
+                    ledger.read(() -> {
+                        checkConsistent(store, dateIndex, textIndex, rollups, full);
+                        return null;
+                    });
+                }
+            }));
+        }
+        long[] compactedRows = {0};
+        others.add(start("compactor", failure, () -> {
+            while(writing.get()){
+                ledger.whileIdle(() -> {
+                    check(compactedRows[0] + journal.records() == store.size(), "journal has " + journal.records()
+                            + " rows after " + compactedRows[0] + " compacted, the store has " + store.size());
+                    journal.compact(store, dateIndex);
+                    compactedRows[0] = store.size();
+                });
+                Thread.sleep(20);
+            }
+        }));
+
+        for(Thread writer : writers){
+            writer.join();
+        }
+        writing.set(false);
+        for(Thread other : others){
+            other.join();
+        }
+        if(failure.get() != null) throw new AssertionError("a thread failed", failure.get());
+
+        int rows = WRITERS * BATCHES * BATCH_SIZE;
+        check(store.size() == rows, "expected " + rows + " rows, the store has " + store.size());
+        checkConsistent(store, dateIndex, textIndex, rollups, true);
+        check(compactedRows[0] + journal.records() == rows, "rows journaled do not match the store");
+        journal.close();
+
+        TransactionStore replayed = TransactionLoader.load(mainFile).getStore();
+        List<TransactionParser.MalformedLine> malformed = new ArrayList<>();
+        TransactionJournal.open(mainFile, journalFile, TransactionJournal.FsyncPolicy.NEVER, replayed, malformed).close();
+        check(malformed.isEmpty(), "the journal has malformed lines: " + malformed);
+        check(Arrays.equals(records(store), records(replayed)), "replaying the files gives a different ledger");
+    }
+
+    //called under the read lock
+    private static void checkConsistent(TransactionStore store, DateIndex dateIndex, TextIndex textIndex, Rollups rollups,
+                                        boolean full) {
+        int size = store.size();
+        if(size > 0) check(store.cents(size - 1) == -BATCH_SIZE, "a batch is half recorded at row " + (size - 1));
+        check(dateIndex.size() == size, "date index has " + dateIndex.size() + " of " + size + " rows");
+        check(rollups.total().count() == size, "rollups count " + rollups.total().count() + " of " + size + " rows");
+        long vendorRows = 0;
+        for(int w = 0; w < WRITERS; w++){
+            vendorRows += textIndex.vendorRows("Vendor " + w).size();
+        }
+        check(vendorRows == size, "vendor index has " + vendorRows + " of " + size + " rows");
+        if(!full) return;
+        boolean[] seen = new boolean[size];
+        for(int position = 0; position < size; position++){
+            int row = dateIndex.rowAt(position);
+            check(!seen[row], "row " + row + " is in the date index twice");
+            seen[row] = true;
+            if(position == 0) continue;
+            int previous = dateIndex.rowAt(position - 1);
+            check(store.epochDay(previous) < store.epochDay(row)
+                    || store.epochDay(previous) == store.epochDay(row) && previous < row, "date index is out of order at " + position);
+        }
+    }
+
+    //every row in the file format, sorted, to compare two ledgers whatever their row order
+    private static String[] records(TransactionStore store) {
+        String[] records = new String[store.size()];
+        for(int row = 0; row < store.size(); row++){
+            records[row] = TransactionFormat.appendRecord(new StringBuilder(), store.epochDay(row), store.secondOfDay(row),
+                    store.description(row), store.vendor(row), store.cents(row)).toString();
+        }
+        Arrays.sort(records);
+        return records;
+    }
+
+    private interface Work {
+        void run() throws Exception;
+    }
+
+    private static Thread start(String name, AtomicReference<Throwable> failure, Work work) {
+        Thread thread = new Thread(() -> {
+            try{
+                work.run();
+            }
+            catch(Throwable e){
+                failure.compareAndSet(null, e);
+            }
+        }, name);
+        thread.start();
+        return thread;
+    }
+
+    private static void check(boolean condition, String message) {
+        if(!condition) throw new AssertionError(message);
+    }
+}